@@ -38,15 +38,38 @@ public class Aggregate extends Operator {
         this.field = afield;
         this.groupByField = gfield;
         this.op = aop;
+        this.tupleDesc = getTupleDesc(child.getTupleDesc(), afield, gfield, aop);
+    }
+
+    /**
+     * Returns the output schema of an aggregate over tuples of the given
+     * schema.
+     */
+    static TupleDesc getTupleDesc(TupleDesc child, int afield, int gfield, Aggregator.Op aop) {
         if (gfield == Aggregator.NO_GROUPING) {
-            this.tupleDesc = new TupleDesc(
+            return new TupleDesc(
                     new Type[]{Type.INT_TYPE},
-                    new String[]{aop.toString() + '(' + child.getTupleDesc().getFieldName(afield) + ')'});
+                    new String[]{aop.toString() + '(' + child.getFieldName(afield) + ')'});
+        } else {
+            return new TupleDesc(
+                    new Type[]{child.getFieldType(gfield), Type.INT_TYPE},
+                    new String[]{child.getFieldName(gfield),
+                            aop.toString() + '(' + child.getFieldName(afield) + ')'});
+        }
+    }
+
+    /**
+     * Returns an aggregator for the type of the aggregate field.
+     */
+    static Aggregator createAggregator(TupleDesc child, int afield, int gfield, Aggregator.Op aop)
+            throws DbException {
+        Type groupType = gfield == Aggregator.NO_GROUPING ? null : child.getFieldType(gfield);
+        if (child.getFieldType(afield).isString()) {
+            return new StringAggregator(gfield, groupType, afield, aop);
+        } else if (child.getFieldType(afield).equals(Type.INT_TYPE)) {
+            return new IntegerAggregator(gfield, groupType, afield, aop);
         } else {
-            this.tupleDesc = new TupleDesc(
-                    new Type[]{child.getTupleDesc().getFieldType(gfield), Type.INT_TYPE},
-                    new String[]{child.getTupleDesc().getFieldName(gfield),
-                            aop.toString() + '(' + child.getTupleDesc().getFieldName(afield) + ')'});
+            throw new DbException("Unimplemented aggregation type");
         }
     }
 
@@ -102,19 +125,7 @@ public class Aggregate extends Operator {
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
         // some code goes here
-        if (child.getTupleDesc().getFieldType(field).equals(Type.STRING_TYPE)) {
-            aggregator = new StringAggregator(
-                    groupByField,
-                    groupByField == Aggregator.NO_GROUPING ? null : child.getTupleDesc().getFieldType(groupByField),
-                    field, op);
-        } else if (child.getTupleDesc().getFieldType(field).equals(Type.INT_TYPE)) {
-            aggregator = new IntegerAggregator(
-                    groupByField,
-                    groupByField == Aggregator.NO_GROUPING ? null : child.getTupleDesc().getFieldType(groupByField),
-                    field, op);
-        } else {
-            throw new DbException("Unimplemented aggregation type");
-        }
+        aggregator = createAggregator(child.getTupleDesc(), field, groupByField, op);
         child.open();
         while (child.hasNext()) {
             aggregator.mergeTupleIntoGroup(child.next());
@@ -76,6 +76,18 @@ public interface Aggregator extends Serializable {
      */
     public void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merge the rows of a batch into the aggregate, as mergeTupleIntoGroup
+     * does for each of them.
+     *
+     * @param batch the rows, with an aggregate field and a group-by field
+     */
+    public default void mergeBatchIntoGroup(TupleBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            mergeTupleIntoGroup(batch.getTuple(batch.row(i)));
+        }
+    }
+
     /**
      * Create a DbIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
@@ -0,0 +1,135 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ArcEvictionPolicy implements Adaptive Replacement Cache (Megiddo and
+ * Modha, FAST '03).
+ * <p>
+ * Resident pages are split between T1, pages seen once recently, and T2,
+ * pages seen at least twice. Ghost lists B1 and B2 remember the ids of pages
+ * recently evicted from T1 and T2. A miss that hits a ghost list shifts the
+ * target size p of T1 towards the list that would have kept the page, so the
+ * policy adapts between recency and frequency. One-off pages of a large scan
+ * only churn through T1 and leave the frequently used pages in T2 alone.
+ */
+public class ArcEvictionPolicy implements EvictionPolicy {
+    private int capacity;
+    private final LinkedHashSet<PageId> t1;
+    private final LinkedHashSet<PageId> t2;
+    private final LinkedHashSet<PageId> b1;
+    private final LinkedHashSet<PageId> b2;
+    private int p;
+
+    /**
+     * @param capacity the number of pages in the buffer pool
+     */
+    public ArcEvictionPolicy(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.t1 = new LinkedHashSet<>();
+        this.t2 = new LinkedHashSet<>();
+        this.b1 = new LinkedHashSet<>();
+        this.b2 = new LinkedHashSet<>();
+        this.p = 0;
+    }
+
+    @Override
+    public void pageAdded(PageId pid) {
+        if (t1.contains(pid) || t2.contains(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        if (b1.remove(pid)) {
+            p = Math.min(capacity, p + Math.max(1, b2.size() / Math.max(b1.size(), 1)));
+            t2.add(pid);
+        } else if (b2.remove(pid)) {
+            p = Math.max(0, p - Math.max(1, b1.size() / Math.max(b2.size(), 1)));
+            t2.add(pid);
+        } else {
+            t1.add(pid);
+            if (t1.size() + b1.size() > capacity) {
+                removeFirst(b1);
+            }
+            if (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity) {
+                removeFirst(b2.isEmpty() ? b1 : b2);
+            }
+        }
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        if (t1.remove(pid) || t2.remove(pid)) {
+            t2.add(pid);
+        }
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        t1.remove(pid);
+        t2.remove(pid);
+    }
+
+    @Override
+    public PageId evict(java.util.function.Predicate<PageId> evictable) {
+        boolean preferT1 = t1.size() > Math.max(p, 0) || t2.isEmpty();
+        PageId victim = preferT1 ? findVictim(t1, evictable) : findVictim(t2, evictable);
+        if (victim == null) {
+            victim = preferT1 ? findVictim(t2, evictable) : findVictim(t1, evictable);
+        }
+        if (victim == null) {
+            return null;
+        }
+        if (t1.remove(victim)) {
+            b1.add(victim);
+            if (b1.size() > capacity) {
+                removeFirst(b1);
+            }
+        } else {
+            t2.remove(victim);
+            b2.add(victim);
+            if (b2.size() > capacity) {
+                removeFirst(b2);
+            }
+        }
+        return victim;
+    }
+
+    @Override
+    public void capacityChanged(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        p = Math.min(p, this.capacity);
+        while (b1.size() > this.capacity) {
+            removeFirst(b1);
+        }
+        while (b2.size() > this.capacity) {
+            removeFirst(b2);
+        }
+    }
+
+    @Override
+    public List<PageId> pagesByHeat() {
+        List<PageId> pages = new ArrayList<>(t2);
+        Collections.reverse(pages);
+        List<PageId> once = new ArrayList<>(t1);
+        Collections.reverse(once);
+        pages.addAll(once);
+        return pages;
+    }
+
+    private static PageId findVictim(Set<PageId> list, java.util.function.Predicate<PageId> evictable) {
+        for (PageId pid : list) {
+            if (evictable.test(pid)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    private static void removeFirst(Set<PageId> list) {
+        Iterator<PageId> it = list.iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
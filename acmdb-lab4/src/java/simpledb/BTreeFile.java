@@ -27,6 +27,7 @@ public class BTreeFile implements DbFile {
 	private final TupleDesc td;
 	private final int tableid ;
 	private int keyField;
+	private volatile boolean memoryMapped;
 
 	/**
 	 * Constructs a B+ tree file backed by the specified file.
@@ -50,6 +51,24 @@ public class BTreeFile implements DbFile {
 		return f;
 	}
 
+	/**
+	 * Choose whether pages are read from a memory mapping of the file rather
+	 * than with a read per page. Worth it for indexes that are read a lot and
+	 * rarely written.
+	 * 
+	 * @see DiskManager#readMapped(File, long, byte[])
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Returns whether pages are read from a memory mapping of the file.
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
 	/**
 	 * Returns an ID uniquely identifying this BTreeFile. Implementation note:
 	 * you will need to generate this tableid somewhere and ensure that each
@@ -81,13 +100,11 @@ public class BTreeFile implements DbFile {
 	 */
 	public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
-		BufferedInputStream bis = null;
 
 		try {
-			bis = new BufferedInputStream(new FileInputStream(f));
 			if(id.pgcateg() == BTreePageId.ROOT_PTR) {
 				byte pageBuf[] = new byte[BTreeRootPtrPage.getPageSize()];
-				int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
+				int retval = readBytes(0, pageBuf);
 				if (retval == -1) {
 					throw new IllegalArgumentException("Read past end of table");
 				}
@@ -101,12 +118,7 @@ public class BTreeFile implements DbFile {
 			}
 			else {
 				byte pageBuf[] = new byte[BufferPool.getPageSize()];
-				if (bis.skip(BTreeRootPtrPage.getPageSize() + (id.pageNumber()-1) * BufferPool.getPageSize()) != 
-						BTreeRootPtrPage.getPageSize() + (id.pageNumber()-1) * BufferPool.getPageSize()) {
-					throw new IllegalArgumentException(
-							"Unable to seek to correct place in BTreeFile");
-				}
-				int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
+				int retval = readBytes(pageOffset(id.pageNumber()), pageBuf);
 				if (retval == -1) {
 					throw new IllegalArgumentException("Read past end of table");
 				}
@@ -130,17 +142,24 @@ public class BTreeFile implements DbFile {
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
-		} finally {
-			// Close the file on success or error
-			try {
-				if (bis != null)
-					bis.close();
-			} catch (IOException ioe) {
-				// Ignore failures closing the file
-			}
 		}
 	}
 
+	private int readBytes(long position, byte[] buf) throws IOException {
+		if(memoryMapped) {
+			return Database.getDiskManager().readMapped(f, position, buf);
+		}
+		return Database.getDiskManager().read(f, position, buf);
+	}
+
+	/**
+	 * Returns the offset in the file of the page with the given number. Page
+	 * numbers start at 1; the root pointer page comes first.
+	 */
+	private static long pageOffset(int pgNo) {
+		return BTreeRootPtrPage.getPageSize() + (long) (pgNo-1) * BufferPool.getPageSize();
+	}
+
 	/**
 	 * Write a page to disk.  This should not be called directly but should 
 	 * be called from the BufferPool when pages are flushed to disk
@@ -151,15 +170,11 @@ public class BTreeFile implements DbFile {
 		BTreePageId id = (BTreePageId) page.getId();
 		
 		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
 		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
+			Database.getDiskManager().write(f, 0, data);
 		}
 		else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (page.getId().pageNumber()-1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
+			Database.getDiskManager().write(f, pageOffset(id.pageNumber()), data);
 		}
 	}
 	
@@ -198,15 +213,25 @@ public class BTreeFile implements DbFile {
                                        Permissions perm, Field f) throws DbException, TransactionAbortedException {
 		// some code goes here
         while (pid.pgcateg() == BTreePageId.INTERNAL) {
-            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+            // keep the page pinned while we search it for the child to descend into
+            boolean pinned = !dirtypages.containsKey(pid);
+            BTreeInternalPage page = pinned
+                    ? (BTreeInternalPage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY)
+                    : (BTreeInternalPage) dirtypages.get(pid);
 
             BTreePageId nextPageId = null;
-            for (Iterator<BTreeEntry> it = page.iterator(); it.hasNext() && nextPageId == null; ) {
-                BTreeEntry entry = it.next();
-                if (f == null || f.compare(Op.LESS_THAN_OR_EQ, entry.getKey())) {
-                    nextPageId = entry.getLeftChild();
-                } else if (!it.hasNext()) {
-                    nextPageId = entry.getRightChild();
+            try {
+                for (Iterator<BTreeEntry> it = page.iterator(); it.hasNext() && nextPageId == null; ) {
+                    BTreeEntry entry = it.next();
+                    if (f == null || f.compare(Op.LESS_THAN_OR_EQ, entry.getKey())) {
+                        nextPageId = entry.getLeftChild();
+                    } else if (!it.hasNext()) {
+                        nextPageId = entry.getRightChild();
+                    }
+                }
+            } finally {
+                if (pinned) {
+                    Database.getBufferPool().unpinPage(tid, pid);
                 }
             }
             assert nextPageId != null;
@@ -1017,13 +1042,10 @@ public class BTreeFile implements DbFile {
 		synchronized(this) {
 			if(f.length() == 0) {
 				// create the root pointer page and the root page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
 				byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-				bw.write(emptyRootPtrData);
-				bw.write(emptyLeafData);
-				bw.close();
+				Database.getDiskManager().write(f, 0, emptyRootPtrData);
+				Database.getDiskManager().write(f, pageOffset(1), emptyLeafData);
 			}
 		}
 
@@ -1079,11 +1101,8 @@ public class BTreeFile implements DbFile {
 		if(headerId == null) {		
 			synchronized(this) {
 				// create the new page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-				bw.write(emptyData);
-				bw.close();
+				Database.getDiskManager().write(f, pageOffset(numPages() + 1), emptyData);
 				emptyPageNo = numPages();
 			}
 		}
@@ -1114,10 +1133,7 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 		
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (emptyPageNo-1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		Database.getDiskManager().write(f, pageOffset(emptyPageNo), BTreePage.createEmptyPageData());
 		
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
@@ -1223,7 +1239,21 @@ public class BTreeFile implements DbFile {
 	 * @return an iterator for the filtered tuples
 	 */
 	public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
-		return new BTreeSearchIterator(this, tid, ipred);
+		return new BTreeSearchIterator(this, tid, ipred, null);
+	}
+
+	/**
+	 * Like {@link #indexIterator(TransactionId, IndexPredicate)}, but looks up
+	 * the internal pages on the way to the first leaf in a cache, for callers
+	 * that probe the file many times in one transaction.
+	 * 
+	 * @param cache - the cache of internal pages of this file, for the transaction
+	 *            of the cache
+	 * @param ipred - the index predicate value to filter on
+	 * @return an iterator for the filtered tuples
+	 */
+	DbFileIterator indexIterator(BTreeProbeCache cache, IndexPredicate ipred) {
+		return new BTreeSearchIterator(this, cache.getTransactionId(), ipred, cache);
 	}
 
 	/**
@@ -1250,6 +1280,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	TransactionId tid;
 	BTreeFile f;
+	ScanRing ring = null;
 
 	/**
 	 * Constructor for this iterator
@@ -1268,10 +1299,30 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
-		curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
+		// like heap scans, trees that do not fit into the buffer pool have
+		// their leaves read through a ring of frames
+		ring = Database.getBufferPool().scanRing(f.numPages());
+		curp = pin(f.findLeafPage(tid, root, Permissions.READ_ONLY, null).getId());
 		it = curp.iterator();
 	}
 
+	/**
+	 * Pin the leaf page we are about to iterate over, and unpin the previous one
+	 */
+	private BTreeLeafPage pin(BTreePageId pid) throws DbException, TransactionAbortedException {
+		BTreeLeafPage page = (BTreeLeafPage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY, ring);
+		unpin();
+		// a full scan visits every leaf, so the ones to the right can be read ahead
+		Database.getBufferPool().readAheadLeaves(tid, page, ring);
+		return page;
+	}
+
+	private void unpin() {
+		if(curp != null) {
+			Database.getBufferPool().unpinPage(tid, curp.getId());
+		}
+	}
+
 	/**
 	 * Read the next tuple either from the current page if it has more tuples or
 	 * from the next page by following the right sibling pointer.
@@ -1286,11 +1337,11 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		while (it == null && curp != null) {
 			BTreePageId nextp = curp.getRightSiblingId();
 			if(nextp == null) {
+				unpin();
 				curp = null;
 			}
 			else {
-				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
-						nextp, Permissions.READ_ONLY);
+				curp = pin(nextp);
 				it = curp.iterator();
 				if (!it.hasNext())
 					it = null;
@@ -1315,8 +1366,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 	 */
 	public void close() {
 		super.close();
+		unpin();
 		it = null;
 		curp = null;
+		ring = null;
 	}
 }
 
@@ -1332,17 +1385,21 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 	TransactionId tid;
 	BTreeFile f;
 	IndexPredicate ipred;
+	BTreeProbeCache cache;
+	ScanRing ring = null;
 
 	/**
 	 * Constructor for this iterator
 	 * @param f - the BTreeFile containing the tuples
 	 * @param tid - the transaction id
 	 * @param ipred - the predicate to filter on
+	 * @param cache - the cache of internal pages to search for the first leaf, or null
 	 */
-	public BTreeSearchIterator(BTreeFile f, TransactionId tid, IndexPredicate ipred) {
+	public BTreeSearchIterator(BTreeFile f, TransactionId tid, IndexPredicate ipred, BTreeProbeCache cache) {
 		this.f = f;
 		this.tid = tid;
 		this.ipred = ipred;
+		this.cache = cache;
 	}
 
 	/**
@@ -1350,19 +1407,50 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 	 * for the given predicate operation
 	 */
 	public void open() throws DbException, TransactionAbortedException {
-		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
-				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
-		BTreePageId root = rootPtr.getRootId();
+		Field key = null;
 		if(ipred.getOp() == Op.EQUALS || ipred.getOp() == Op.GREATER_THAN 
 				|| ipred.getOp() == Op.GREATER_THAN_OR_EQ) {
-			curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, ipred.getField());
+			key = ipred.getField();
+		}
+		BTreePageId leafId;
+		if(cache != null) {
+			leafId = cache.findLeaf(key);
 		}
 		else {
-			curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
+			BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
+					tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
+			BTreePageId root = rootPtr.getRootId();
+			leafId = f.findLeafPage(tid, root, Permissions.READ_ONLY, key).getId();
+		}
+		// range scans may read many leaves, so they go through a ring like full
+		// scans; equality probes read few leaves and should keep them hot
+		if(ipred.getOp() != Op.EQUALS) {
+			ring = Database.getBufferPool().scanRing(f.numPages());
 		}
+		curp = pin(leafId);
 		it = curp.iterator();
 	}
 
+	/**
+	 * Pin the leaf page we are about to iterate over, and unpin the previous one
+	 */
+	private BTreeLeafPage pin(BTreePageId pid) throws DbException, TransactionAbortedException {
+		BTreeLeafPage page = (BTreeLeafPage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY, ring);
+		unpin();
+		// only these scans are sure to go on until the last leaf
+		if(ipred.getOp() == Op.GREATER_THAN || ipred.getOp() == Op.GREATER_THAN_OR_EQ
+				|| ipred.getOp() == Op.NOT_EQUALS) {
+			Database.getBufferPool().readAheadLeaves(tid, page, ring);
+		}
+		return page;
+	}
+
+	private void unpin() {
+		if(curp != null) {
+			Database.getBufferPool().unpinPage(tid, curp.getId());
+		}
+	}
+
 	/**
 	 * Read the next tuple either from the current page if it has more tuples matching
 	 * the predicate or from the next page by following the right sibling pointer.
@@ -1398,8 +1486,7 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 				return null;
 			}
 			else {
-				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
-						nextp, Permissions.READ_ONLY);
+				curp = pin(nextp);
 				it = curp.iterator();
 			}
 		}
@@ -1420,6 +1507,9 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 	 */
 	public void close() {
 		super.close();
+		unpin();
 		it = null;
+		curp = null;
+		ring = null;
 	}
 }
@@ -558,7 +558,7 @@ public class BTreeFileEncoder {
 		for(int t = 0; t < recordcount; t++) {
 			TupleDesc td = tuples.get(t).getTupleDesc();
 			for(int j = 0; j < td.numFields(); j++) {
-				tuples.get(t).getField(j).serialize(dos);
+				tuples.get(t).getField(j).serializeFixed(dos);
 			}
 		}
 
@@ -669,7 +669,7 @@ public class BTreeFileEncoder {
 
 		Collections.sort(entries, new EntryComparator());
 		for(int e = 0; e < entrycount; e++) {
-			entries.get(e).getKey().serialize(dos);
+			entries.get(e).getKey().serializeFixed(dos);
 		}
 
 		for(int e = entrycount; e < nentries; e++) {
@@ -23,6 +23,7 @@ public class BTreeHeaderPage implements Page {
 	private int nextPage; // next header page or 0
 	private int prevPage; // previous header page or 0
 
+	/** The before-image, shared with the data the page was read from. */
 	byte[] oldData;
 	private final Byte oldDataLock= (byte) 0;
 
@@ -61,7 +62,7 @@ public class BTreeHeaderPage implements Page {
 
 		dis.close();
 
-		setBeforeImage();
+		oldData = data;
 	}
 
 	/**
@@ -109,7 +110,7 @@ public class BTreeHeaderPage implements Page {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
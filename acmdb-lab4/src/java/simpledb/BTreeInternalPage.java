@@ -108,7 +108,7 @@ public class BTreeInternalPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		oldData = data;
 	}
 
 	/** 
@@ -157,7 +157,7 @@ public class BTreeInternalPage extends BTreePage {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -181,7 +181,7 @@ public class BTreeInternalPage extends BTreePage {
 		// read the key field
 		Field f = null;
 		try {
-			f = td.getFieldType(keyField).parse(dis);
+			f = td.getFieldType(keyField).parseFixed(dis);
 		} catch (java.text.ParseException e) {
 			e.printStackTrace();
 			throw new NoSuchElementException("parsing error!");
@@ -282,7 +282,7 @@ public class BTreeInternalPage extends BTreePage {
 
 			// non-empty slot
 			try {
-				keys[i].serialize(dos);
+				keys[i].serializeFixed(dos);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
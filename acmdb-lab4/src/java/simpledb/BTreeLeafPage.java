@@ -103,7 +103,7 @@ public class BTreeLeafPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		oldData = data;
 	}
 
 	/** 
@@ -149,7 +149,7 @@ public class BTreeLeafPage extends BTreePage {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -176,7 +176,7 @@ public class BTreeLeafPage extends BTreePage {
 		t.setRecordId(rid);
 		try {
 			for (int j=0; j<td.numFields(); j++) {
-				Field f = td.getFieldType(j).parse(dis);
+				Field f = td.getFieldType(j).parseFixed(dis);
 				t.setField(j, f);
 			}
 		} catch (java.text.ParseException e) {
@@ -253,7 +253,7 @@ public class BTreeLeafPage extends BTreePage {
 			for (int j=0; j<td.numFields(); j++) {
 				Field f = tuples[i].getField(j);
 				try {
-					f.serialize(dos);
+					f.serializeFixed(dos);
 
 				} catch (IOException e) {
 					e.printStackTrace();
@@ -24,6 +24,12 @@ public abstract class BTreePage implements Page {
 	protected final int keyField;
 
 	protected int parent; // parent is always internal node or 0 for root node
+	/**
+	 * The before-image of this page. Until the page is first flushed, this is
+	 * the array the page was read from, shared rather than copied: the data
+	 * passed to a page constructor, like the arrays returned by getPageData,
+	 * is never written to afterwards.
+	 */
 	protected byte[] oldData;
 	protected final Byte oldDataLock= (byte) 0;
 
@@ -0,0 +1,128 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import simpledb.Predicate.Op;
+
+/**
+ * BTreeProbeCache keeps the keys and child pointers of the internal pages of
+ * a B+ tree that a transaction has searched, so that repeated index probes,
+ * such as those of an {@link IndexNestedLoopJoin}, descend to the leaf
+ * without going through the buffer pool for the upper levels and without
+ * walking the entries of each internal page again.
+ * <p>
+ * The transaction that fills the cache holds read locks on the cached pages
+ * until it completes, so no other transaction can change them. The cache
+ * must not be used by other transactions, nor after the owning transaction
+ * has modified the tree.
+ */
+class BTreeProbeCache {
+
+	/**
+	 * An internal page: the search goes to children[i] for the first i with
+	 * key &lt;= keys[i], and to children[keys.length] if there is none.
+	 */
+	private static class Node {
+		final Field[] keys;
+		final BTreePageId[] children;
+
+		Node(Field[] keys, BTreePageId[] children) {
+			this.keys = keys;
+			this.children = children;
+		}
+	}
+
+	private final BTreeFile f;
+	private final TransactionId tid;
+	private BTreePageId root;
+	private final HashMap<BTreePageId, Node> nodes = new HashMap<>();
+
+	/**
+	 * Create an empty cache.
+	 * @param f - the B+ tree to probe
+	 * @param tid - the transaction probing it
+	 */
+	BTreeProbeCache(BTreeFile f, TransactionId tid) {
+		this.f = f;
+		this.tid = tid;
+	}
+
+	/**
+	 * @return the file this cache belongs to
+	 */
+	BTreeFile getFile() {
+		return f;
+	}
+
+	/**
+	 * @return the transaction this cache belongs to
+	 */
+	TransactionId getTransactionId() {
+		return tid;
+	}
+
+	/**
+	 * Find the left-most leaf page possibly containing the key field key, like
+	 * BTreeFile.findLeafPage does, reading only the internal pages that are
+	 * not cached yet.
+	 *
+	 * @param key - the field to search for, or null for the left-most leaf
+	 * @return the id of the leaf page
+	 */
+	BTreePageId findLeaf(Field key) throws DbException, TransactionAbortedException {
+		if (root == null) {
+			BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
+					tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
+			root = rootPtr.getRootId();
+		}
+		BTreePageId pid = root;
+		while (pid.pgcateg() == BTreePageId.INTERNAL) {
+			Node node = nodes.get(pid);
+			if (node == null) {
+				node = read(pid);
+				nodes.put(pid, node);
+			}
+			pid = node.children[key == null ? 0 : search(node.keys, key)];
+		}
+		return pid;
+	}
+
+	/**
+	 * Returns the index of the first key that is at least key, or keys.length.
+	 */
+	private static int search(Field[] keys, Field key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (key.compare(Op.LESS_THAN_OR_EQ, keys[mid])) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+
+	private Node read(BTreePageId pid) throws DbException, TransactionAbortedException {
+		BTreeInternalPage page = (BTreeInternalPage) Database.getBufferPool().pinPage(
+				tid, pid, Permissions.READ_ONLY);
+		try {
+			ArrayList<Field> keys = new ArrayList<>();
+			ArrayList<BTreePageId> children = new ArrayList<>();
+			for (Iterator<BTreeEntry> it = page.iterator(); it.hasNext(); ) {
+				BTreeEntry entry = it.next();
+				if (children.isEmpty()) {
+					children.add(entry.getLeftChild());
+				}
+				keys.add(entry.getKey());
+				children.add(entry.getRightChild());
+			}
+			return new Node(keys.toArray(new Field[0]), children.toArray(new BTreePageId[0]));
+		} finally {
+			Database.getBufferPool().unpinPage(tid, pid);
+		}
+	}
+}
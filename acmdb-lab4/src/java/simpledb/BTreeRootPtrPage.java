@@ -22,6 +22,7 @@ public class BTreeRootPtrPage implements Page {
 	private int rootCategory;
 	private int header;
 
+	/** The before-image, shared with the data the page was read from. */
 	private byte[] oldData;
 
 	/**
@@ -44,11 +45,11 @@ public class BTreeRootPtrPage implements Page {
 		// read in the header pointer
 		header = dis.readInt();
 		
-		setBeforeImage();
+		oldData = data;
 	}
 
 	public void setBeforeImage() {
-		oldData = getPageData().clone();
+		oldData = getPageData();
 	}
 
 	/**
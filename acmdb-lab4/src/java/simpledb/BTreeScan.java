@@ -17,6 +17,7 @@ public class BTreeScan implements DbIterator {
 	private transient DbFileIterator it;
 	private String tablename;
 	private String alias;
+	private int keyField;
 
 	/**
 	 * Creates a B+ tree scan over the specified table as a part of the
@@ -76,11 +77,13 @@ public class BTreeScan implements DbIterator {
 		this.isOpen=false;
 		this.alias = tableAlias;
 		this.tablename = Database.getCatalog().getTableName(tableid);
+		DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+		this.keyField = file instanceof BTreeFile ? ((BTreeFile) file).keyField() : -1;
 		if(ipred == null) {
-			this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+			this.it = file.iterator(tid);
 		}
 		else {
-			this.it = ((BTreeFile) Database.getCatalog().getDatabaseFile(tableid)).indexIterator(tid, ipred);
+			this.it = ((BTreeFile) file).indexIterator(tid, ipred);
 		}
 		myTd = Database.getCatalog().getTupleDesc(tableid);
 		String[] newNames = new String[myTd.numFields()];
@@ -95,6 +98,14 @@ public class BTreeScan implements DbIterator {
 		myTd = new TupleDesc(newTypes, newNames);
 	}
 
+	/**
+	 * @return the key field of the B+ tree, in ascending order of which
+	 *         tuples are returned
+	 */
+	public int getKeyField() {
+		return keyField;
+	}
+
 	public BTreeScan(TransactionId tid, int tableid, IndexPredicate ipred) {
 		this(tid, tableid, Database.getCatalog().getTableName(tableid), ipred);
 	}
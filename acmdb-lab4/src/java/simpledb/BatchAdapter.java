@@ -0,0 +1,67 @@
+package simpledb;
+
+/**
+ * BatchAdapter reads the tuples of a DbIterator into batches, so that a
+ * tuple-at-a-time operator can feed a batch operator.
+ */
+public class BatchAdapter implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DbIterator child;
+    private final int capacity;
+
+    /**
+     * @param child    the iterator to read tuples from
+     * @param capacity the number of tuples per batch
+     */
+    public BatchAdapter(DbIterator child, int capacity) {
+        this.child = child;
+        this.capacity = capacity;
+    }
+
+    public BatchAdapter(DbIterator child) {
+        this(child, TupleBatch.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the iterator this adapter reads tuples from
+     */
+    public DbIterator getChild() {
+        return child;
+    }
+
+    /**
+     * @return the number of tuples per batch
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (!child.hasNext()) {
+            return null;
+        }
+        TupleBatch batch = new TupleBatch(child.getTupleDesc(), capacity);
+        while (!batch.isFull() && child.hasNext()) {
+            batch.add(child.next());
+        }
+        return batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,81 @@
+package simpledb;
+
+/**
+ * BatchAggregate is the {@link BatchIterator} counterpart of
+ * {@link Aggregate}. It hands the batches of its child to an
+ * {@link Aggregator} whole, which for int fields aggregates them without
+ * building tuples.
+ */
+public class BatchAggregate implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchIterator child;
+    private final int field;
+    private final int groupByField;
+    private final Aggregator.Op op;
+    private final TupleDesc tupleDesc;
+    private final int capacity;
+    private transient DbIterator iterator;
+
+    /**
+     * @param child    The BatchIterator that is feeding us rows.
+     * @param afield   The column over which we are computing an aggregate.
+     * @param gfield   The column over which we are grouping the result, or -1
+     *                 if there is no grouping
+     * @param aop      The aggregation operator to use
+     * @param capacity the number of rows per output batch
+     */
+    public BatchAggregate(BatchIterator child, int afield, int gfield, Aggregator.Op aop, int capacity) {
+        this.child = child;
+        this.field = afield;
+        this.groupByField = gfield;
+        this.op = aop;
+        this.capacity = capacity;
+        this.tupleDesc = Aggregate.getTupleDesc(child.getTupleDesc(), afield, gfield, aop);
+    }
+
+    public BatchAggregate(BatchIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, afield, gfield, aop, TupleBatch.DEFAULT_CAPACITY);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        Aggregator aggregator = Aggregate.createAggregator(child.getTupleDesc(), field, groupByField, op);
+        child.open();
+        for (TupleBatch batch = child.nextBatch(); batch != null; batch = child.nextBatch()) {
+            aggregator.mergeBatchIntoGroup(batch);
+        }
+        iterator = aggregator.iterator();
+        iterator.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (iterator == null) {
+            throw new IllegalStateException("BatchAggregate not yet open");
+        }
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        TupleBatch batch = new TupleBatch(tupleDesc, capacity);
+        while (!batch.isFull() && iterator.hasNext()) {
+            batch.add(iterator.next());
+        }
+        return batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        iterator.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    public void close() {
+        child.close();
+        if (iterator != null) {
+            iterator.close();
+            iterator = null;
+        }
+    }
+}
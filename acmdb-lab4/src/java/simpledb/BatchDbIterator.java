@@ -0,0 +1,73 @@
+package simpledb;
+
+/**
+ * BatchDbIterator hands out the rows of a BatchIterator one tuple at a
+ * time, so that a batch operator can feed a tuple-at-a-time operator.
+ */
+public class BatchDbIterator extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private BatchIterator child;
+    private transient TupleBatch batch;
+    private transient int position;
+
+    public BatchDbIterator(BatchIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = null;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || position == batch.size()) {
+            batch = child.nextBatch();
+            position = 0;
+            if (batch == null) {
+                return null;
+            }
+        }
+        return batch.getTuple(batch.row(position++));
+    }
+
+    /**
+     * The child of this operator is a BatchIterator, which is not a
+     * DbIterator; if it is a {@link BatchAdapter}, this returns the iterator
+     * the adapter reads, and no children otherwise.
+     */
+    @Override
+    public DbIterator[] getChildren() {
+        if (child instanceof BatchAdapter) {
+            return new DbIterator[]{((BatchAdapter) child).getChild()};
+        }
+        return new DbIterator[0];
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (child instanceof BatchAdapter) {
+            assert children.length == 1;
+            child = new BatchAdapter(children[0], ((BatchAdapter) child).getCapacity());
+        } else {
+            assert children.length == 0;
+        }
+    }
+}
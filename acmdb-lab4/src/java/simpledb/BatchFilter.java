@@ -0,0 +1,74 @@
+package simpledb;
+
+/**
+ * BatchFilter is the {@link BatchIterator} counterpart of {@link Filter}.
+ * It narrows the selection vector of each batch of its child to the rows
+ * that satisfy the predicate, without copying them.
+ */
+public class BatchFilter implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate predicate;
+    private final BatchIterator child;
+
+    /**
+     * @param p     The predicate to filter rows with
+     * @param child The child to read batches from
+     */
+    public BatchFilter(Predicate p, BatchIterator child) {
+        this.predicate = p;
+        this.child = child;
+    }
+
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch = child.nextBatch();
+        if (batch == null) {
+            return null;
+        }
+        int field = predicate.getField();
+        Predicate.Op op = predicate.getOp();
+        Field operand = predicate.getOperand();
+        int size = batch.size();
+        int[] selection = new int[size];
+        int count = 0;
+        if (batch.isIntColumn(field) && operand instanceof IntField) {
+            int value = ((IntField) operand).getValue();
+            for (int i = 0; i < size; i++) {
+                int row = batch.row(i);
+                if (IntField.compare(op, batch.getInt(field, row), value)) {
+                    selection[count++] = row;
+                }
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                int row = batch.row(i);
+                if (batch.getField(field, row).compare(op, operand)) {
+                    selection[count++] = row;
+                }
+            }
+        }
+        batch.select(selection, count);
+        return batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+    }
+}
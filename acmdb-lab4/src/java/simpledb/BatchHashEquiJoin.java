@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchHashEquiJoin is the {@link BatchIterator} counterpart of
+ * {@link HashEquiJoin}. It builds a hash table over all rows of its first
+ * child and probes it with the batches of its second child.
+ */
+public class BatchHashEquiJoin implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate predicate;
+    private final BatchIterator child1;
+    private final BatchIterator child2;
+    private final TupleDesc td;
+    private final int capacity;
+
+    private transient Map<Field, List<Tuple>> map;
+    /** The probe batch being joined, the position in it, and in its matches. */
+    private transient TupleBatch probe;
+    private transient int probePosition;
+    private transient List<Tuple> matches;
+    private transient int matchPosition;
+
+    /**
+     * @param p        The equality predicate to join on
+     * @param child1   The child to build the hash table from
+     * @param child2   The child to probe the hash table with
+     * @param capacity the number of rows per output batch
+     */
+    public BatchHashEquiJoin(JoinPredicate p, BatchIterator child1, BatchIterator child2, int capacity) {
+        assert p.getOperator().equals(Predicate.Op.EQUALS);
+        this.predicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.capacity = capacity;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public BatchHashEquiJoin(JoinPredicate p, BatchIterator child1, BatchIterator child2) {
+        this(p, child1, child2, TupleBatch.DEFAULT_CAPACITY);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return predicate;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        map = new HashMap<>();
+        int field1 = predicate.getField1();
+        for (TupleBatch batch = child1.nextBatch(); batch != null; batch = child1.nextBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                int row = batch.row(i);
+                map.computeIfAbsent(batch.getField(field1, row), k -> new ArrayList<>())
+                        .add(batch.getTuple(row));
+            }
+        }
+        probe = null;
+        matches = null;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (map == null) {
+            throw new IllegalStateException("BatchHashEquiJoin not yet open");
+        }
+        int field2 = predicate.getField2();
+        int numFields1 = child1.getTupleDesc().numFields();
+        int numFields2 = child2.getTupleDesc().numFields();
+        TupleBatch out = new TupleBatch(td, capacity);
+        while (!out.isFull()) {
+            if (matches != null && matchPosition < matches.size()) {
+                Tuple t1 = matches.get(matchPosition++);
+                int probeRow = probe.row(probePosition - 1);
+                int row = out.addRow();
+                for (int i = 0; i < numFields1; i++) {
+                    out.copyFrom(i, row, t1, i);
+                }
+                for (int i = 0; i < numFields2; i++) {
+                    out.copyFrom(numFields1 + i, row, probe, i, probeRow);
+                }
+                continue;
+            }
+            if (probe == null || probePosition == probe.size()) {
+                probe = child2.nextBatch();
+                probePosition = 0;
+                matches = null;
+                if (probe == null) {
+                    break;
+                }
+                continue;
+            }
+            matches = map.get(probe.getField(field2, probe.row(probePosition++)));
+            matchPosition = 0;
+        }
+        return out.size() == 0 && probe == null ? null : out;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child2.rewind();
+        probe = null;
+        matches = null;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child1.close();
+        child2.close();
+        map = null;
+        probe = null;
+        matches = null;
+    }
+}
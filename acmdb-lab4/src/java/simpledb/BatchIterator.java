@@ -0,0 +1,52 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * BatchIterator is the batch-at-a-time counterpart of {@link DbIterator}:
+ * each call hands out a {@link TupleBatch} of many rows, so that operators
+ * pay for a call per batch instead of per tuple, and can work on the
+ * columns of a batch in tight loops.
+ * <p>
+ * {@link BatchAdapter} turns a DbIterator into a BatchIterator, and
+ * {@link BatchDbIterator} turns a BatchIterator back into a DbIterator, so
+ * that plans can mix both kinds of operators.
+ */
+public interface BatchIterator extends Serializable {
+    /**
+     * Opens the iterator. This must be called before any of the other methods.
+     *
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    public void open()
+            throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch of rows. Batches may be empty, for example if a
+     * filter dropped all of their rows. A batch belongs to the caller until
+     * the next call to nextBatch, rewind or close; after that the iterator
+     * may reuse it.
+     *
+     * @return the next batch, or null if there are no more rows.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     *
+     * @throws DbException           when rewind is unsupported.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public void rewind() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the TupleDesc of the rows of this BatchIterator.
+     */
+    public TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator.
+     */
+    public void close();
+}
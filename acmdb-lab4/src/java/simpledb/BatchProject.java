@@ -0,0 +1,56 @@
+package simpledb;
+
+import java.util.List;
+
+/**
+ * BatchProject is the {@link BatchIterator} counterpart of {@link Project}.
+ * The batches it returns share their columns with the batches of its
+ * child.
+ */
+public class BatchProject implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchIterator child;
+    private final int[] fields;
+    private final TupleDesc td;
+
+    /**
+     * @param fieldList The fields of the child to keep, in their new order
+     * @param child     The child to read batches from
+     */
+    public BatchProject(List<Integer> fieldList, BatchIterator child) {
+        this.child = child;
+        this.fields = new int[fieldList.size()];
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        TupleDesc childTd = child.getTupleDesc();
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fieldList.get(i);
+            types[i] = childTd.getFieldType(fields[i]);
+            names[i] = childTd.getFieldName(fields[i]);
+        }
+        this.td = new TupleDesc(types, names);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch = child.nextBatch();
+        return batch == null ? null : batch.project(fields, td);
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child.close();
+    }
+}
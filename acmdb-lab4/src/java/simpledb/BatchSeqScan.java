@@ -0,0 +1,83 @@
+package simpledb;
+
+/**
+ * BatchSeqScan reads the tuples of a table in batches; it is the
+ * {@link BatchIterator} counterpart of {@link SeqScan}.
+ */
+public class BatchSeqScan implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId transactionId;
+    private final DbFile file;
+    private final TupleDesc tupleDesc;
+    private final int capacity;
+    private transient DbFileIterator iterator;
+
+    /**
+     * Creates a sequential scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the table to scan.
+     * @param tableAlias the alias of this table; field names are prefixed
+     *                   with it as in {@link SeqScan#getTupleDesc()}
+     * @param capacity   the number of tuples per batch
+     */
+    public BatchSeqScan(TransactionId tid, int tableid, String tableAlias, int capacity) {
+        this.transactionId = tid;
+        this.file = Database.getCatalog().getDatabaseFile(tableid);
+        this.capacity = capacity;
+        TupleDesc td = file.getTupleDesc();
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = tableAlias + '.' + td.getFieldName(i);
+        }
+        this.tupleDesc = new TupleDesc(types, names);
+    }
+
+    public BatchSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, TupleBatch.DEFAULT_CAPACITY);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        iterator = file.iterator(transactionId);
+        iterator.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (iterator == null) {
+            throw new IllegalStateException("BatchSeqScan not yet open");
+        }
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        TupleBatch batch = new TupleBatch(tupleDesc, capacity);
+        int numFields = tupleDesc.numFields();
+        while (!batch.isFull() && iterator.hasNext()) {
+            Tuple t = iterator.next();
+            int row = batch.addRow();
+            for (int i = 0; i < numFields; i++) {
+                batch.copyFrom(i, row, t, i);
+            }
+        }
+        return batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        iterator.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    public void close() {
+        if (iterator != null) {
+            iterator.close();
+            iterator = null;
+        }
+    }
+}
@@ -1,8 +1,21 @@
 package simpledb;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -28,22 +41,261 @@ public class BufferPool {
     private static final int PAGE_SIZE = 4096;
     private static int pageSize = PAGE_SIZE;
 
-    private final int numPages;
-    private final Map<PageId, Page> pageCache;
-    private final Map<PageId, Integer> pageCount;
-    private final Queue<PageId> pageOrder;
+    /**
+     * Upper bound on the number of shards of the page table.
+     */
+    private static final int MAX_SHARDS = 16;
+    /**
+     * A pool is only split into another pair of shards if each of them gets
+     * at least this many pages.
+     */
+    private static final int MIN_PAGES_PER_SHARD = 32;
+    /**
+     * Number of buffered cache hits after which a shard tries to replay them
+     * into its eviction policy.
+     */
+    private static final int ACCESS_DRAIN_THRESHOLD = 64;
+    /**
+     * Upper bound on the number of frames of the ring of a large scan.
+     */
+    private static final int MAX_RING_PAGES = 64;
+
+    private volatile int numPages;
+    private final Shard[] shards;
+    private final int shardShift;
+    private final AtomicInteger residentPages;
+    private final LockManager lockManager;
+    private final ConcurrentHashMap<TransactionId, Map<PageId, Integer>> transactionPins;
+    private final ConcurrentHashMap<TransactionId, ReentrantReadWriteLock> operationLatches;
+    private final ConcurrentHashMap<TransactionId, Map<PageId, Page>> stolenPages;
+    private final ReadAhead readAhead;
+    private final BufferPoolMetrics metrics;
+    private final AtomicInteger foregroundReads;
+    private final Object resizeLock;
+    // read without the monitor, since misses look it up holding a shard latch
+    private volatile PageCleaner pageCleaner;
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * A resident page and the number of pins on it. Pins are taken and
+     * dropped without the latch of the shard; the count becomes -1 when the
+     * frame is evicted or discarded, so that a pin racing with the eviction
+     * fails instead of pinning a page that has left the pool.
+     */
+    private static final class Frame {
+        volatile Page page;
+        final AtomicInteger pins;
+        // read ahead and not requested since; adding it counted as its
+        // first reference
+        volatile boolean prefetched;
+
+        Frame(Page page) {
+            this.page = page;
+            this.pins = new AtomicInteger();
+        }
+
+        /**
+         * @return false if the frame no longer belongs to the pool
+         */
+        boolean pin() {
+            while (true) {
+                int count = pins.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (pins.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unpin(int times) {
+            while (true) {
+                int count = pins.get();
+                if (count <= 0 || pins.compareAndSet(count, Math.max(count - times, 0))) {
+                    return;
+                }
+            }
+        }
+
+        boolean isPinned() {
+            return pins.get() > 0;
+        }
+
+        /**
+         * @return true if this is the first request of a page read ahead
+         */
+        boolean takePrefetched() {
+            if (!prefetched) {
+                return false;
+            }
+            prefetched = false;
+            return true;
+        }
+
+        /**
+         * Take the frame out of the pool if nobody has pinned it.
+         */
+        boolean retire() {
+            return pins.compareAndSet(0, -1);
+        }
+    }
+
+    /**
+     * One partition of the page table. Hits, pins and unpins read the
+     * concurrent map without taking the latch and only queue the access;
+     * everything that changes the set of resident pages, or feeds the
+     * eviction policy, holds the latch. Pages that miss are read outside the
+     * latch, behind a pending read like the ones of {@link ReadAhead}.
+     */
+    private static final class Shard {
+        final ReentrantLock latch;
+        final ConcurrentHashMap<PageId, Frame> pages;
+        final EvictionPolicy evictionPolicy;
+        final ConcurrentLinkedQueue<PageId> accesses;
+        final AtomicInteger pendingAccesses;
+        final Map<PageId, ReadAhead.PendingRead> pendingReads;
+
+        Shard(EvictionPolicy evictionPolicy) {
+            this.latch = new ReentrantLock();
+            this.pages = new ConcurrentHashMap<>();
+            this.evictionPolicy = evictionPolicy;
+            this.accesses = new ConcurrentLinkedQueue<>();
+            this.pendingAccesses = new AtomicInteger();
+            this.pendingReads = new HashMap<>();
+        }
+
+        // must hold the latch
+        boolean isEvictable(PageId pid) {
+            Frame frame = pages.get(pid);
+            return !frame.isPinned() && frame.page.isDirty() == null;
+        }
+
+        void recordAccess(PageId pid) {
+            accesses.offer(pid);
+            if (pendingAccesses.incrementAndGet() >= ACCESS_DRAIN_THRESHOLD && latch.tryLock()) {
+                try {
+                    drainAccesses();
+                } finally {
+                    latch.unlock();
+                }
+            }
+        }
+
+        // must hold the latch
+        void drainAccesses() {
+            PageId pid;
+            while ((pid = accesses.poll()) != null) {
+                pendingAccesses.decrementAndGet();
+                if (pages.containsKey(pid)) {
+                    evictionPolicy.pageAccessed(pid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, using CLOCK
+     * replacement.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, capacity -> new ClockEvictionPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     * <p>
+     * The page table is split into shards by PageId hash, each with its own
+     * latch and its own eviction policy, so the factory is called once per
+     * shard with the number of pages that shard is expected to hold.
+     *
+     * @param numPages      maximum number of pages in this buffer pool.
+     * @param policyFactory creates the policy choosing which page of a shard
+     *                      to evict when the buffer pool is full
+     */
+    public BufferPool(int numPages, IntFunction<? extends EvictionPolicy> policyFactory) {
         // some code goes here
         this.numPages = numPages;
-        this.pageCache = new HashMap<>();
-        this.pageCount = new HashMap<>();
-        this.pageOrder = new PriorityQueue<>(Comparator.comparingInt(pageCount::get));
+        int numShards = 1;
+        while (numShards < MAX_SHARDS && numShards * 2 * MIN_PAGES_PER_SHARD <= numPages) {
+            numShards <<= 1;
+        }
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = new Shard(policyFactory.apply((numPages + numShards - 1) / numShards));
+        }
+        this.shardShift = 32 - Integer.numberOfTrailingZeros(numShards);
+        this.residentPages = new AtomicInteger();
+        this.lockManager = new LockManager();
+        this.transactionPins = new ConcurrentHashMap<>();
+        this.operationLatches = new ConcurrentHashMap<>();
+        this.stolenPages = new ConcurrentHashMap<>();
+        this.readAhead = new ReadAhead(this);
+        this.metrics = new BufferPoolMetrics();
+        this.foregroundReads = new AtomicInteger();
+        this.resizeLock = new Object();
+    }
+
+    /**
+     * @return the maximum number of pages in this buffer pool
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * Change the maximum number of pages in this buffer pool while it is in
+     * use. Growing only raises the limit. Shrinking evicts clean pages until
+     * the pool fits; dirty pages stay until their transactions complete, and
+     * pinned pages until they are unpinned, and the pool shrinks further as
+     * frames are needed.
+     *
+     * @param numPages the new maximum number of pages
+     */
+    public void resize(int numPages) {
+        if (numPages <= 0) {
+            throw new IllegalArgumentException("buffer pool must hold at least one page");
+        }
+        // not the monitor of the pool: the log file holds it while it takes
+        // shard latches, and misses hold a shard latch while they evict
+        synchronized (resizeLock) {
+            this.numPages = numPages;
+            for (Shard shard : shards) {
+                shard.latch.lock();
+                try {
+                    shard.evictionPolicy.capacityChanged((numPages + shards.length - 1) / shards.length);
+                } finally {
+                    shard.latch.unlock();
+                }
+            }
+            if (residentPages.get() > numPages) {
+                evictExcessPages();
+            }
+        }
+    }
+
+    /**
+     * Evict pages from all shards in turn until the pool is within its
+     * limit, or no more pages can be evicted.
+     */
+    private void evictExcessPages() {
+        boolean evicted = true;
+        while (evicted && residentPages.get() > numPages) {
+            evicted = false;
+            for (Shard shard : shards) {
+                if (residentPages.get() <= numPages) {
+                    break;
+                }
+                shard.latch.lock();
+                try {
+                    shard.drainAccesses();
+                    evicted |= evictPage(shard);
+                } finally {
+                    shard.latch.unlock();
+                }
+            }
+        }
     }
 
     public static int getPageSize() {
@@ -60,19 +312,31 @@ public class BufferPool {
         BufferPool.pageSize = PAGE_SIZE;
     }
 
-    public void putPageToCache(PageId pid, Page page) {
-        if (pageCache.containsKey(pid)) {
-            pageOrder.remove(pid);
-            Integer tmp = pageCount.get(pid);
-            pageCount.put(pid, tmp + 1);
-            pageOrder.add(pid);
-        } else {
-            while (pageCache.size() >= numPages) {
-                evictPage();
+    private Shard shardFor(PageId pid) {
+        if (shards.length == 1) {
+            return shards[0];
+        }
+        // Fibonacci hashing, since PageId hash codes keep little entropy in
+        // their low bits
+        return shards[(pid.hashCode() * 0x9E3779B9) >>> shardShift];
+    }
+
+    public void putPageToCache(PageId pid, Page page) throws DbException {
+        Shard shard = shardFor(pid);
+        shard.latch.lock();
+        try {
+            shard.drainAccesses();
+            Frame frame = shard.pages.get(pid);
+            if (frame != null) {
+                frame.page = page;
+                shard.evictionPolicy.pageAccessed(pid);
+            } else {
+                reserveFrame(shard);
+                shard.pages.put(pid, new Frame(page));
+                shard.evictionPolicy.pageAdded(pid);
             }
-            pageCache.put(pid, page);
-            pageCount.put(pid, 1);
-            pageOrder.add(pid);
+        } finally {
+            shard.latch.unlock();
         }
     }
 
@@ -87,20 +351,645 @@ public class BufferPool {
      * space in the buffer pool, an page should be evicted and the new page
      * should be added in its place.
      *
+     * <p>
+     * The returned page is not pinned, so it may be evicted as soon as the
+     * buffer pool needs room; callers that keep using a page for a while
+     * should use {@link #pinPage} instead.
+     *
      * @param tid  the ID of the transaction requesting the page
      * @param pid  the ID of the requested page
      * @param perm the requested permissions on the page
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
-            throws DbException {
+            throws TransactionAbortedException, DbException {
         // some code goes here
-        Page hitPage = pageCache.getOrDefault(pid, null);
-        if (hitPage != null) {
-            return hitPage;
+        return getPage(tid, pid, perm, false, null);
+    }
+
+    /**
+     * Retrieve the specified page like {@link #getPage}, on behalf of a scan
+     * that reads pages it misses into the given ring.
+     *
+     * @param ring the ring of the scan, or null
+     */
+    Page getPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+            throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, false, ring);
+    }
+
+    /**
+     * Retrieve the specified page like {@link #getPage} and pin it, so that it
+     * stays in the buffer pool until it is unpinned. Every call must be
+     * matched by a call to {@link #unpinPage}; pins a transaction still holds
+     * when it completes are released then.
+     *
+     * @param tid  the ID of the transaction requesting the page
+     * @param pid  the ID of the requested page
+     * @param perm the requested permissions on the page
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, true, null);
+    }
+
+    /**
+     * Retrieve and pin the specified page like {@link #pinPage}, on behalf of
+     * a scan that reads pages it misses into the given ring.
+     *
+     * @param ring the ring of the scan, or null
+     */
+    Page pinPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+            throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, true, ring);
+    }
+
+    /**
+     * Return a ring of frames for a sequential scan over a file with the
+     * given number of pages, or null if the file fits into the buffer pool
+     * and the scan may use the whole pool.
+     *
+     * @param filePages the number of pages the scan is going to read
+     * @see ScanRing
+     */
+    ScanRing scanRing(int filePages) {
+        if (filePages <= numPages) {
+            return null;
+        }
+        return new ScanRing(Math.max(1, Math.min(numPages / 2, MAX_RING_PAGES)));
+    }
+
+    /**
+     * Drop one pin the specified transaction holds on the specified page.
+     *
+     * @param tid the ID of the transaction that pinned the page
+     * @param pid the ID of the page to unpin
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        if (tid != null) {
+            Map<PageId, Integer> pins = transactionPins.get(tid);
+            if (pins == null) {
+                return;
+            }
+            synchronized (pins) {
+                Integer count = pins.get(pid);
+                if (count == null) {
+                    return;
+                }
+                if (count == 1) {
+                    pins.remove(pid);
+                } else {
+                    pins.put(pid, count - 1);
+                }
+            }
+        }
+        unpin(pid, 1);
+    }
+
+    private void unpin(PageId pid, int times) {
+        Frame frame = shardFor(pid).pages.get(pid);
+        if (frame != null) {
+            frame.unpin(times);
+        }
+    }
+
+    /**
+     * Release all pins held by the specified transaction.
+     */
+    private void unpinAll(TransactionId tid) {
+        Map<PageId, Integer> pins = transactionPins.remove(tid);
+        if (pins != null) {
+            synchronized (pins) {
+                for (Map.Entry<PageId, Integer> entry : pins.entrySet()) {
+                    unpin(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private Page getPage(TransactionId tid, PageId pid, Permissions perm, boolean pin, ScanRing ring)
+            throws TransactionAbortedException, DbException {
+        // the lock must be acquired outside of any latch, otherwise a waiting
+        // transaction would block everyone else using the pool
+        if (tid != null) {
+            try {
+                lockManager.acquireLock(tid, pid, perm);
+            } catch (DeadlockException e) {
+                throw new TransactionAbortedException();
+            }
+        }
+        readAhead.pageRequested(tid, pid, ring);
+        Shard shard = shardFor(pid);
+        Frame frame = shard.pages.get(pid);
+        if (frame == null || (pin && !frame.pin())) {
+            frame = readPage(shard, pid, pin, ring);
+        } else {
+            // a large scan touches each page once, which must not make
+            // its pages look hot, and neither must reading a page ahead
+            if (ring == null && !frame.takePrefetched()) {
+                shard.recordAccess(pid);
+            }
+            metrics.hit(pid);
+        }
+        if (pin && tid != null) {
+            Map<PageId, Integer> pins = transactionPins.computeIfAbsent(tid, k -> new HashMap<>());
+            synchronized (pins) {
+                pins.merge(pid, 1, Integer::sum);
+            }
+        }
+        return frame.page;
+    }
+
+    /**
+     * Return the frame of a page that was not found without the latch,
+     * pinned if requested, reading the page if it is not resident. The read
+     * happens outside the latch: the page is registered as a pending read
+     * first, so that others missing on it wait for this read, like they
+     * wait for pages that are read ahead. A scan that misses holds a frame
+     * of its ring for the duration of the read.
+     */
+    private Frame readPage(Shard shard, PageId pid, boolean pin, ScanRing ring) throws DbException {
+        boolean reserved = ring != null && !shard.pages.containsKey(pid);
+        if (reserved) {
+            recycleRingFrame(ring);
+        }
+        try {
+            return loadPage(shard, pid, pin, ring);
+        } finally {
+            if (reserved) {
+                ring.release();
+            }
+        }
+    }
+
+    private Frame loadPage(Shard shard, PageId pid, boolean pin, ScanRing ring) throws DbException {
+        while (true) {
+            ReadAhead.PendingRead pending;
+            boolean reading = false;
+            shard.latch.lock();
+            try {
+                // somebody may have read the page while we were waiting
+                Frame frame = shard.pages.get(pid);
+                if (frame != null) {
+                    if (ring == null && !frame.takePrefetched()) {
+                        shard.evictionPolicy.pageAccessed(pid);
+                    }
+                    if (pin) {
+                        frame.pin();
+                    }
+                    metrics.hit(pid);
+                    return frame;
+                }
+                pending = shard.pendingReads.get(pid);
+                if (pending == null) {
+                    pending = new ReadAhead.PendingRead(pid, ring, true);
+                    shard.pendingReads.put(pid, pending);
+                    reading = true;
+                }
+            } finally {
+                shard.latch.unlock();
+            }
+            if (!reading) {
+                // the page is being read; wait for it instead of reading it twice
+                pending.await();
+                continue;
+            }
+            Page page = null;
+            foregroundReads.incrementAndGet();
+            try {
+                page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            } finally {
+                foregroundReads.decrementAndGet();
+                if (page == null) {
+                    abandonPendingRead(shard, pending);
+                }
+            }
+            metrics.miss(pid);
+            shard.latch.lock();
+            try {
+                shard.pendingReads.remove(pid);
+                // a page discarded while it was read may be outdated
+                if (!pending.stale && !shard.pages.containsKey(pid)) {
+                    shard.drainAccesses();
+                    reserveFrame(shard);
+                    Frame frame = new Frame(page);
+                    if (pin) {
+                        frame.pin();
+                    }
+                    shard.pages.put(pid, frame);
+                    shard.evictionPolicy.pageAdded(pid);
+                    if (ring != null) {
+                        ring.add(pid);
+                    }
+                    return frame;
+                }
+            } finally {
+                shard.latch.unlock();
+                pending.finish();
+            }
+        }
+    }
+
+    /**
+     * Drop a pending read whose page could not be read, and wake up everybody
+     * waiting for it; they then try to read the page themselves.
+     */
+    private void abandonPendingRead(Shard shard, ReadAhead.PendingRead pending) {
+        shard.latch.lock();
+        try {
+            shard.pendingReads.remove(pending.pid);
+        } finally {
+            shard.latch.unlock();
+            pending.finish();
+        }
+    }
+
+    /**
+     * Return a snapshot of the counters of this buffer pool: hits, misses,
+     * evictions, flushes and bytes transferred, in total, per table and per
+     * page category, along with the number of resident, pinned and dirty
+     * frames.
+     */
+    public BufferPoolStats stats() {
+        int resident = 0;
+        int pinned = 0;
+        int dirty = 0;
+        for (Shard shard : shards) {
+            shard.latch.lock();
+            try {
+                resident += shard.pages.size();
+                for (Frame frame : shard.pages.values()) {
+                    if (frame.isPinned()) {
+                        pinned++;
+                    }
+                    if (frame.page.isDirty() != null) {
+                        dirty++;
+                    }
+                }
+            } finally {
+                shard.latch.unlock();
+            }
+        }
+        return new BufferPoolStats(numPages, resident, pinned, dirty,
+                metrics.snapshotByTable(pageSize), metrics.snapshotByCategory(pageSize));
+    }
+
+    /**
+     * Tell the buffer pool that the specified transaction scans the leaves of
+     * a B+ tree from left to right and has just reached the given leaf, so
+     * that the leaves to its right can be read ahead. Only scans that go on
+     * until the last leaf should call this.
+     *
+     * @param tid  the ID of the transaction scanning the leaves
+     * @param leaf the leaf page the scan has moved to
+     */
+    public void readAheadLeaves(TransactionId tid, BTreeLeafPage leaf) {
+        readAheadLeaves(tid, leaf, null);
+    }
+
+    /**
+     * Like {@link #readAheadLeaves(TransactionId, BTreeLeafPage)}, but for a
+     * scan that reads its leaves through the given ring; the leaves read
+     * ahead go into the same ring.
+     */
+    void readAheadLeaves(TransactionId tid, BTreeLeafPage leaf, ScanRing ring) {
+        readAhead.leafScanned(tid, leaf, ring);
+    }
+
+    /**
+     * Register a page that is about to be read ahead.
+     *
+     * @return null if the page is cached or already being read
+     */
+    ReadAhead.PendingRead beginPendingRead(PageId pid, ScanRing ring, boolean mayEvict) {
+        Shard shard = shardFor(pid);
+        shard.latch.lock();
+        try {
+            if (shard.pages.containsKey(pid) || shard.pendingReads.containsKey(pid)) {
+                return null;
+            }
+            ReadAhead.PendingRead read = new ReadAhead.PendingRead(pid, ring, mayEvict);
+            shard.pendingReads.put(pid, read);
+            return read;
+        } finally {
+            shard.latch.unlock();
+        }
+    }
+
+    /**
+     * Add a page that was read ahead to the cache and wake up everybody
+     * waiting for it. The page is dropped if it was discarded in the
+     * meantime, or if no frame can be freed for it.
+     *
+     * @param page the page that was read, or null if the read failed
+     */
+    void finishPendingRead(ReadAhead.PendingRead read, Page page) {
+        PageId pid = read.pid;
+        Shard shard = shardFor(pid);
+        if (page != null) {
+            metrics.readAhead(pid);
+            if (read.ring != null) {
+                recycleRingFrame(read.ring);
+            }
+        }
+        try {
+            cachePendingRead(read, page);
+        } finally {
+            if (page != null && read.ring != null) {
+                read.ring.release();
+            }
+        }
+    }
+
+    private void cachePendingRead(ReadAhead.PendingRead read, Page page) {
+        PageId pid = read.pid;
+        Shard shard = shardFor(pid);
+        shard.latch.lock();
+        try {
+            shard.pendingReads.remove(pid);
+            if (page != null && !read.stale && !shard.pages.containsKey(pid)
+                    && (read.mayEvict || hasFreeFrames())) {
+                shard.drainAccesses();
+                reserveFrame(shard);
+                // added but not referenced yet: the request of the scan is
+                // its first reference, as for a page read on demand
+                Frame frame = new Frame(page);
+                frame.prefetched = true;
+                shard.pages.put(pid, frame);
+                shard.evictionPolicy.pageAdded(pid);
+                if (read.ring != null) {
+                    read.ring.add(pid);
+                }
+            }
+        } catch (DbException e) {
+            // every frame is pinned or dirty; the page is read on demand
+        } finally {
+            shard.latch.unlock();
+            read.finish();
+        }
+    }
+
+    /**
+     * @return true if the buffer pool has room for another page without
+     * evicting one
+     */
+    boolean hasFreeFrames() {
+        return residentPages.get() < numPages;
+    }
+
+    /**
+     * Wait while transactions are reading pages they missed on, so that
+     * background reads do not compete with them for the disk.
+     *
+     * @return false if the calling thread was interrupted
+     */
+    boolean awaitForegroundReads() {
+        while (foregroundReads.get() > 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the ids of the cached pages to a file, hottest first according
+     * to the eviction policies, so that {@link #preloadPages} can bring them
+     * back after a restart. Each id is stored like the log file stores page
+     * ids: the length of its serialized form followed by its integers.
+     *
+     * @param f the file to write
+     */
+    public void saveHotPages(File f) throws IOException {
+        List<List<PageId>> rankings = new ArrayList<>();
+        int total = 0;
+        for (Shard shard : shards) {
+            shard.latch.lock();
+            try {
+                shard.drainAccesses();
+                Set<PageId> ranking = new LinkedHashSet<>();
+                for (PageId pid : shard.evictionPolicy.pagesByHeat()) {
+                    if (shard.pages.containsKey(pid)) {
+                        ranking.add(pid);
+                    }
+                }
+                ranking.addAll(shard.pages.keySet());
+                rankings.add(new ArrayList<>(ranking));
+                total += ranking.size();
+            } finally {
+                shard.latch.unlock();
+            }
+        }
+        // take the hottest remaining page of every shard in turn
+        List<PageId> pages = new ArrayList<>();
+        for (int i = 0; pages.size() < total; i++) {
+            for (List<PageId> ranking : rankings) {
+                if (i < ranking.size()) {
+                    pages.add(ranking.get(i));
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+            out.writeInt(pages.size());
+            for (PageId pid : pages) {
+                int[] data = pid.serialize();
+                out.writeInt(data.length);
+                for (int x : data) {
+                    out.writeInt(x);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the page belongs to a table that is not in the catalog
+     * or lies beyond the end of its file
+     */
+    private static boolean pageExists(PageId pid) {
+        DbFile file;
+        try {
+            file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+        if (file instanceof HeapFile) {
+            return pid.pageNumber() < ((HeapFile) file).numPages();
+        }
+        if (file instanceof BTreeFile) {
+            // B+ tree pages are numbered from 1, after the root pointer page
+            return pid.pageNumber() <= ((BTreeFile) file).numPages();
+        }
+        return true;
+    }
+
+    /**
+     * Read the hottest pages listed in a file written by
+     * {@link #saveHotPages} back into the buffer pool. Pages are read in the
+     * background, in file order, into free frames only; transactions that
+     * miss on pages meanwhile take priority. Pages of tables that are not in
+     * the catalog are skipped.
+     *
+     * @param f the file to read
+     * @return the number of pages scheduled for preloading
+     */
+    public int preloadPages(File f) throws IOException {
+        List<PageId> pages = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            int n = in.readInt();
+            for (int i = 0; i < n && pages.size() < numPages; i++) {
+                int[] data = new int[in.readInt()];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = in.readInt();
+                }
+                PageId pid;
+                if (data.length == 2) {
+                    pid = new HeapPageId(data[0], data[1]);
+                } else if (data.length == 3) {
+                    pid = new BTreePageId(data[0], data[1], data[2]);
+                } else {
+                    continue;
+                }
+                if (pageExists(pid)) {
+                    pages.add(pid);
+                }
+            }
+        }
+        readAhead.preload(pages);
+        return pages.size();
+    }
+
+    /**
+     * Return the resident version of a page without waiting or locking, or
+     * null if it is not resident.
+     */
+    private Page residentPage(PageId pid) {
+        Frame frame = shardFor(pid).pages.get(pid);
+        return frame == null ? null : frame.page;
+    }
+
+    /**
+     * Return the cached version of a page, waiting for it if it is being
+     * read ahead, or null if it is not cached. Neither locks nor counts as
+     * an access.
+     */
+    Page cachedPage(PageId pid) {
+        Shard shard = shardFor(pid);
+        while (true) {
+            ReadAhead.PendingRead pending;
+            shard.latch.lock();
+            try {
+                Frame frame = shard.pages.get(pid);
+                pending = shard.pendingReads.get(pid);
+                if (frame != null || pending == null) {
+                    return frame == null ? null : frame.page;
+                }
+            } finally {
+                shard.latch.unlock();
+            }
+            pending.await();
+        }
+    }
+
+    /**
+     * Count one more resident page, evicting pages if the pool is full. Pages
+     * are preferably evicted from the given shard, whose latch the caller
+     * must hold; other shards are only tried if they are not busy.
+     *
+     * @throws DbException if every page in the buffer pool is pinned or dirty
+     */
+    private void reserveFrame(Shard shard) throws DbException {
+        while (true) {
+            int resident = residentPages.get();
+            if (resident < numPages) {
+                if (residentPages.compareAndSet(resident, resident + 1)) {
+                    return;
+                }
+                continue;
+            }
+            if (evictPage(shard)) {
+                continue;
+            }
+            wakeUpPageCleaner();
+            boolean evicted = false;
+            boolean busy = false;
+            for (Shard other : shards) {
+                if (other == shard) {
+                    continue;
+                }
+                if (!other.latch.tryLock()) {
+                    busy = true;
+                    continue;
+                }
+                try {
+                    other.drainAccesses();
+                    evicted = evictPage(other);
+                } finally {
+                    other.latch.unlock();
+                }
+                if (evicted) {
+                    break;
+                }
+            }
+            if (!evicted) {
+                if (!busy) {
+                    throw new DbException("All pages in the buffer pool are pinned or dirty.");
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Reserve a frame of a scan ring for the page the scan is about to read,
+     * evicting the oldest pages of the ring while it is over its capacity.
+     * Must be called without holding any latch. Pinned pages, such as the
+     * ones the scan is on, go back to the tail of the ring; dirty pages leave
+     * the ring and are left to the eviction policy of their shard. The frame
+     * stays reserved until the caller releases it.
+     */
+    private void recycleRingFrame(ScanRing ring) {
+        ring.reserve();
+        PageId firstPinned = null;
+        for (PageId victim = ring.nextVictim(); victim != null; victim = ring.nextVictim()) {
+            if (evictRingPage(victim)) {
+                continue;
+            }
+            ring.requeue(victim);
+            if (firstPinned == null) {
+                firstPinned = victim;
+            } else if (victim.equals(firstPinned)) {
+                // every page left in the ring is pinned
+                break;
+            }
+        }
+    }
+
+    /**
+     * Evict a page that leaves a scan ring, unless it is dirty or pinned.
+     *
+     * @return false if the page is pinned
+     */
+    private boolean evictRingPage(PageId pid) {
+        Shard owner = shardFor(pid);
+        owner.latch.lock();
+        try {
+            Frame frame = owner.pages.get(pid);
+            if (frame == null || frame.page.isDirty() != null) {
+                return true;
+            }
+            if (!frame.retire()) {
+                return false;
+            }
+            owner.pages.remove(pid);
+            owner.evictionPolicy.pageRemoved(pid);
+            residentPages.decrementAndGet();
+            metrics.evicted(pid);
+            return true;
+        } finally {
+            owner.latch.unlock();
         }
-        hitPage = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-        putPageToCache(pid, hitPage);
-        return hitPage;
     }
 
     /**
@@ -115,6 +1004,7 @@ public class BufferPool {
     public void releasePage(TransactionId tid, PageId pid) {
         // some code goes here
         // not necessary for lab1|lab2
+        lockManager.releaseLock(tid, pid);
     }
 
     /**
@@ -122,9 +1012,10 @@ public class BufferPool {
      *
      * @param tid the ID of the transaction requesting the unlock
      */
-    public void transactionComplete(TransactionId tid) {
+    public void transactionComplete(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /**
@@ -133,7 +1024,7 @@ public class BufferPool {
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
         // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -146,6 +1037,34 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        ReentrantReadWriteLock latch = operationLatches.remove(tid);
+        if (latch != null) {
+            // wait for the page cleaner to finish writing pages of tid
+            latch.writeLock().lock();
+        }
+        try {
+            if (commit) {
+                flushPages(tid);
+            } else {
+                revertPages(tid);
+            }
+        } finally {
+            if (latch != null) {
+                latch.writeLock().unlock();
+            }
+            stolenPages.remove(tid);
+            readAhead.transactionComplete(tid);
+            unpinAll(tid);
+            lockManager.releaseAllLocks(tid);
+        }
+    }
+
+    /**
+     * Return the latch a transaction holds in shared mode while it modifies
+     * pages, so that the page cleaner never writes a half-updated page.
+     */
+    private ReentrantReadWriteLock operationLatch(TransactionId tid) {
+        return operationLatches.computeIfAbsent(tid, k -> new ReentrantReadWriteLock());
     }
 
     /**
@@ -163,17 +1082,24 @@ public class BufferPool {
      * @param tableId the table to add the tuple to
      * @param t       the tuple to add
      */
-    public void insertTuple(TransactionId tid, int tableId, Tuple t) {
+    public void insertTuple(TransactionId tid, int tableId, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        Lock latch = tid == null ? null : operationLatch(tid).readLock();
+        if (latch != null) {
+            latch.lock();
+        }
         try {
             List<Page> pages = Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t);
             for (Page page: pages) {
                 page.markDirty(true, tid);
                 putPageToCache(page.getId(), page);
             }
-        } catch (DbException | IOException | TransactionAbortedException e) {
-            e.printStackTrace();
+        } finally {
+            if (latch != null) {
+                latch.unlock();
+            }
         }
     }
 
@@ -190,9 +1116,14 @@ public class BufferPool {
      * @param tid the transaction deleting the tuple.
      * @param t   the tuple to delete
      */
-    public void deleteTuple(TransactionId tid, Tuple t) {
+    public void deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        Lock latch = tid == null ? null : operationLatch(tid).readLock();
+        if (latch != null) {
+            latch.lock();
+        }
         try {
             List<Page> pages = Database.getCatalog().getDatabaseFile(
                     t.getRecordId().getPageId().getTableId()).deleteTuple(tid, t);
@@ -200,8 +1131,170 @@ public class BufferPool {
                 page.markDirty(true, tid);
                 putPageToCache(page.getId(), page);
             }
-        } catch (DbException | IOException | TransactionAbortedException e) {
-            e.printStackTrace();
+        } finally {
+            if (latch != null) {
+                latch.unlock();
+            }
+        }
+    }
+
+    /**
+     * Start a background thread that writes dirty pages back to disk ahead of
+     * eviction. Replaces the cleaner that is already running, if any.
+     * <p>
+     * The cleaner may write pages of transactions that have not committed
+     * yet. Such writes are logged first, and their before-images are kept in
+     * memory, so that an abort can restore them on disk.
+     *
+     * @param intervalMillis the time between two cleaning rounds
+     * @param cleanTarget    the share of frames, between 0 and 1, that
+     *                       should be clean or free after a round
+     */
+    public synchronized void startPageCleaner(long intervalMillis, double cleanTarget) {
+        stopPageCleaner();
+        pageCleaner = new PageCleaner(this, intervalMillis, cleanTarget);
+        pageCleaner.start();
+    }
+
+    /**
+     * Stop the background page cleaner, if it is running.
+     */
+    public synchronized void stopPageCleaner() {
+        if (pageCleaner != null) {
+            pageCleaner.shutdown();
+            pageCleaner = null;
+        }
+    }
+
+    /**
+     * Stop the background threads of this buffer pool.
+     */
+    void shutdown() {
+        stopPageCleaner();
+        readAhead.shutdown();
+    }
+
+    /**
+     * Called with a shard latch held, so it must not take the monitor of the
+     * pool: resize and the log file take the monitor before shard latches.
+     */
+    private void wakeUpPageCleaner() {
+        PageCleaner cleaner = pageCleaner;
+        if (cleaner != null) {
+            cleaner.wakeUp();
+        }
+    }
+
+    /**
+     * Write dirty pages back to disk until at least the given share of the
+     * frames is clean or free. Pages are written in file order, sorted by
+     * table and page number.
+     *
+     * @param cleanTarget the share of frames, between 0 and 1, that should be
+     *                    clean or free afterwards
+     */
+    void cleanPages(double cleanTarget) throws IOException {
+        List<Page> dirty = new ArrayList<>();
+        List<Page> pinned = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.latch.lock();
+            try {
+                for (Frame frame : shard.pages.values()) {
+                    if (frame.page.isDirty() != null) {
+                        // cleaning pinned pages does not make them evictable,
+                        // so they come last
+                        (frame.isPinned() ? pinned : dirty).add(frame.page);
+                    }
+                }
+            } finally {
+                shard.latch.unlock();
+            }
+        }
+        dirty.addAll(pinned);
+        int toClean = dirty.size() - (int) Math.floor(numPages * (1 - cleanTarget));
+        if (toClean <= 0) {
+            return;
+        }
+        List<Page> batch = dirty.subList(0, Math.min(toClean, dirty.size()));
+        batch.sort(Comparator.comparingInt((Page p) -> p.getId().getTableId())
+                .thenComparingInt(p -> p.getId().pageNumber()));
+        for (Page page : batch) {
+            stealPage(page);
+        }
+    }
+
+    /**
+     * Write a dirty page of a running transaction to disk and mark it clean,
+     * remembering its before-image in case the transaction aborts. The
+     * update is logged and the log forced first, so that recovery can undo
+     * the write if the transaction never commits.
+     *
+     * @return false if the page could not be written right now
+     */
+    private boolean stealPage(Page page) throws IOException {
+        TransactionId dirtier = page.isDirty();
+        if (dirtier == null) {
+            return false;
+        }
+        ReentrantReadWriteLock latch = operationLatches.get(dirtier);
+        if (latch == null || !latch.writeLock().tryLock()) {
+            return false;
+        }
+        try {
+            PageId pid = page.getId();
+            if (!dirtier.equals(page.isDirty()) || residentPage(pid) != page) {
+                return false;
+            }
+            Page before = page.getBeforeImage();
+            LogFile log = Database.getLogFile();
+            log.logWrite(dirtier, before, page);
+            log.force();
+            stolenPages.computeIfAbsent(dirtier, k -> new ConcurrentHashMap<>())
+                    .putIfAbsent(pid, before);
+            Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            metrics.flushed(pid);
+            page.markDirty(false, null);
+            return true;
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Take over pages that a transaction is about to append to a file
+     * without going through the pool: lock them for the transaction and
+     * remember their empty before-images, as if the page cleaner had written
+     * them, so that an abort wipes them again. Like the writes of the
+     * cleaner, the pages are logged and the log is forced, so that recovery
+     * can empty them too. Must be called before the pages are written.
+     *
+     * @see HeapFile#bulkInsert(TransactionId, DbIterator)
+     */
+    void appendPages(TransactionId tid, List<? extends Page> pages)
+            throws TransactionAbortedException, IOException {
+        Map<PageId, Page> stolen = stolenPages.computeIfAbsent(tid, k -> new ConcurrentHashMap<>());
+        LogFile log = Database.getLogFile();
+        for (Page page : pages) {
+            PageId pid = page.getId();
+            try {
+                lockManager.acquireLock(tid, pid, Permissions.READ_WRITE);
+            } catch (DeadlockException e) {
+                throw new TransactionAbortedException();
+            }
+            Page before = page.getBeforeImage();
+            log.logWrite(tid, before, page);
+            stolen.putIfAbsent(pid, before);
+        }
+        log.force();
+    }
+
+    /**
+     * Count pages taken over by {@link #appendPages} as flushed, once they
+     * have been written.
+     */
+    void appendedPages(List<? extends Page> pages) {
+        for (Page page : pages) {
+            metrics.flushed(page.getId());
         }
     }
 
@@ -210,14 +1303,21 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      * break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() {
+    public void flushAllPages() {
         // some code goes here
         // not necessary for lab1
-        for (PageId pid: pageCache.keySet()) {
+        for (Shard shard : shards) {
+            shard.latch.lock();
             try {
-                flushPage(pid);
-            } catch (IOException e) {
-                e.printStackTrace();
+                for (PageId pid : shard.pages.keySet()) {
+                    try {
+                        flushPage(shard, pid);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                shard.latch.unlock();
             }
         }
     }
@@ -231,12 +1331,25 @@ public class BufferPool {
      * Also used by B+ tree files to ensure that deleted pages
      * are removed from the cache so they can be reused safely
      */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-        pageCache.remove(pid);
-        pageCount.remove(pid);
-        pageOrder.remove(pid);
+        Shard shard = shardFor(pid);
+        shard.latch.lock();
+        try {
+            ReadAhead.PendingRead pending = shard.pendingReads.get(pid);
+            if (pending != null) {
+                pending.stale = true;
+            }
+            Frame frame = shard.pages.remove(pid);
+            if (frame != null) {
+                frame.pins.set(-1);
+                shard.evictionPolicy.pageRemoved(pid);
+                residentPages.decrementAndGet();
+            }
+        } finally {
+            shard.latch.unlock();
+        }
     }
 
     /**
@@ -244,40 +1357,106 @@ public class BufferPool {
      *
      * @param pid an ID indicating the page to flush
      */
-    private synchronized void flushPage(PageId pid) throws IOException {
+    private void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-        Page page = pageCache.get(pid);
-        if (page.isDirty() != null) {
+        Shard shard = shardFor(pid);
+        shard.latch.lock();
+        try {
+            flushPage(shard, pid);
+        } finally {
+            shard.latch.unlock();
+        }
+    }
+
+    // must hold the latch of the shard
+    private void flushPage(Shard shard, PageId pid) throws IOException {
+        Frame frame = shard.pages.get(pid);
+        Page page = frame == null ? null : frame.page;
+        if (page != null && page.isDirty() != null) {
             page.markDirty(false, null);
             Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            metrics.flushed(pid);
         }
     }
 
     /**
      * Write all pages of the specified transaction to disk.
      */
-    public synchronized void flushPages(TransactionId tid) {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        for (PageId pid : lockManager.getLockedPages(tid)) {
+            Page page = residentPage(pid);
+            if (page != null && tid.equals(page.isDirty())) {
+                flushPage(pid);
+                page.setBeforeImage();
+            }
+        }
+        // pages the cleaner wrote early are clean, but their before-image
+        // still is the one from before the transaction
+        Map<PageId, Page> stolen = stolenPages.remove(tid);
+        if (stolen != null) {
+            for (PageId pid : stolen.keySet()) {
+                Page page = residentPage(pid);
+                if (page != null) {
+                    page.setBeforeImage();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop all pages dirtied by the specified transaction, so that the next
+     * access rereads their last committed version from disk. Pages the
+     * cleaner already wrote are first restored on disk from their
+     * before-image.
+     */
+    private void revertPages(TransactionId tid) throws IOException {
+        Map<PageId, Page> stolen = stolenPages.remove(tid);
+        if (stolen != null) {
+            for (Map.Entry<PageId, Page> entry : stolen.entrySet()) {
+                PageId pid = entry.getKey();
+                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(entry.getValue());
+                metrics.flushed(pid);
+                discardPage(pid);
+            }
+        }
+        for (PageId pid : lockManager.getLockedPages(tid)) {
+            Page page = residentPage(pid);
+            if (page != null && tid.equals(page.isDirty())) {
+                discardPage(pid);
+            }
+        }
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Discards a page of the given shard from the buffer pool; the caller
+     * must hold the latch of the shard.
+     * Pinned pages are never evicted, and neither are dirty pages, since
+     * they belong to transactions that have not committed yet (NO STEAL).
+     *
+     * @return false if all pages of the shard are pinned or dirty
      */
-    private synchronized void evictPage() {
+    private boolean evictPage(Shard shard) {
         // some code goes here
         // not necessary for lab1
-        PageId evictPageId = pageOrder.poll();
-        try {
-            flushPage(evictPageId);
-        } catch (IOException e) {
-            e.printStackTrace();
+        PageId evictPageId;
+        while (true) {
+            evictPageId = shard.evictionPolicy.evict(shard::isEvictable);
+            if (evictPageId == null) {
+                return false;
+            }
+            if (shard.pages.get(evictPageId).retire()) {
+                break;
+            }
+            // pinned since the policy looked at it
+            shard.evictionPolicy.pageAdded(evictPageId);
         }
-        pageCache.remove(evictPageId);
-        pageOrder.remove(evictPageId);
-        pageCount.remove(evictPageId);
+        shard.pages.remove(evictPageId);
+        residentPages.decrementAndGet();
+        metrics.evicted(evictPageId);
+        return true;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package simpledb;
+
+/**
+ * Management interface of the buffer pool of the running Database, published
+ * through JMX under the name {@value BufferPoolMonitor#OBJECT_NAME}.
+ *
+ * @see BufferPool#stats()
+ */
+public interface BufferPoolMXBean {
+
+    /**
+     * @return a snapshot of all counters, including the ones per table and
+     * per page category
+     */
+    public BufferPoolStats getStats();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public double getHitRatio();
+
+    public long getEvictions();
+
+    public long getFlushes();
+
+    public long getBytesRead();
+
+    public long getBytesWritten();
+
+    public int getCapacity();
+
+    /**
+     * Resize the buffer pool.
+     *
+     * @see Database#resizeBufferPool(int)
+     */
+    public void setCapacity(int capacity);
+
+    public int getResidentFrames();
+
+    public int getPinnedFrames();
+
+    public int getDirtyFrames();
+}
@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BufferPoolMetrics counts the events of a BufferPool per table and per page
+ * category. Counters are striped LongAdders, so that recording a hit costs a
+ * map lookup and two uncontended additions; totals are only summed up when a
+ * snapshot is taken.
+ *
+ * @Threadsafe
+ */
+class BufferPoolMetrics {
+    /**
+     * Names of the page categories, indexed by {@link #category(PageId)}.
+     */
+    static final String[] CATEGORIES = {"heap", "root_ptr", "internal", "leaf", "header", "other"};
+
+    private static final class Cells {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder flushes = new LongAdder();
+        final LongAdder pagesRead = new LongAdder();
+        final LongAdder pagesWritten = new LongAdder();
+
+        BufferPoolStats.Counters snapshot(int pageSize) {
+            return new BufferPoolStats.Counters(hits.sum(), misses.sum(), evictions.sum(),
+                    flushes.sum(), pagesRead.sum() * pageSize, pagesWritten.sum() * pageSize);
+        }
+    }
+
+    private final Cells[] byCategory;
+    private final ConcurrentHashMap<Integer, Cells> byTable;
+
+    BufferPoolMetrics() {
+        this.byCategory = new Cells[CATEGORIES.length];
+        for (int i = 0; i < byCategory.length; i++) {
+            byCategory[i] = new Cells();
+        }
+        this.byTable = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Return the index of the category of a page in CATEGORIES.
+     */
+    static int category(PageId pid) {
+        if (pid instanceof HeapPageId) {
+            return 0;
+        }
+        if (pid instanceof BTreePageId) {
+            return 1 + ((BTreePageId) pid).pgcateg();
+        }
+        return CATEGORIES.length - 1;
+    }
+
+    private Cells table(int tableId) {
+        Cells cells = byTable.get(tableId);
+        return cells != null ? cells : byTable.computeIfAbsent(tableId, k -> new Cells());
+    }
+
+    void hit(PageId pid) {
+        table(pid.getTableId()).hits.increment();
+        byCategory[category(pid)].hits.increment();
+    }
+
+    /**
+     * A page was requested and had to be read from disk.
+     */
+    void miss(PageId pid) {
+        Cells table = table(pid.getTableId());
+        Cells category = byCategory[category(pid)];
+        table.misses.increment();
+        table.pagesRead.increment();
+        category.misses.increment();
+        category.pagesRead.increment();
+    }
+
+    /**
+     * A page was read from disk before it was requested.
+     */
+    void readAhead(PageId pid) {
+        table(pid.getTableId()).pagesRead.increment();
+        byCategory[category(pid)].pagesRead.increment();
+    }
+
+    void evicted(PageId pid) {
+        table(pid.getTableId()).evictions.increment();
+        byCategory[category(pid)].evictions.increment();
+    }
+
+    /**
+     * A dirty page, or the before-image of one, was written to disk.
+     */
+    void flushed(PageId pid) {
+        Cells table = table(pid.getTableId());
+        Cells category = byCategory[category(pid)];
+        table.flushes.increment();
+        table.pagesWritten.increment();
+        category.flushes.increment();
+        category.pagesWritten.increment();
+    }
+
+    Map<Integer, BufferPoolStats.Counters> snapshotByTable(int pageSize) {
+        Map<Integer, BufferPoolStats.Counters> snapshot = new HashMap<>();
+        for (Map.Entry<Integer, Cells> entry : byTable.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot(pageSize));
+        }
+        return snapshot;
+    }
+
+    Map<String, BufferPoolStats.Counters> snapshotByCategory(int pageSize) {
+        Map<String, BufferPoolStats.Counters> snapshot = new HashMap<>();
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            snapshot.put(CATEGORIES[i], byCategory[i].snapshot(pageSize));
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,99 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * BufferPoolMonitor publishes the counters of the buffer pool through JMX,
+ * and lets operators resize the pool by setting its capacity. It always
+ * refers to the pool the Database currently uses, so it only has to be
+ * registered once, even if the pool is replaced.
+ */
+class BufferPoolMonitor implements BufferPoolMXBean {
+    static final String OBJECT_NAME = "simpledb:type=BufferPool";
+
+    /**
+     * Register the monitor with the platform MBean server, unless it is
+     * registered already.
+     */
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new BufferPoolMonitor(), name);
+            }
+        } catch (JMException | SecurityException e) {
+            // monitoring is optional; the database works without it
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public BufferPoolStats getStats() {
+        return Database.getBufferPool().stats();
+    }
+
+    @Override
+    public long getHits() {
+        return getStats().getTotal().getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return getStats().getTotal().getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return getStats().getTotal().getHitRatio();
+    }
+
+    @Override
+    public long getEvictions() {
+        return getStats().getTotal().getEvictions();
+    }
+
+    @Override
+    public long getFlushes() {
+        return getStats().getTotal().getFlushes();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return getStats().getTotal().getBytesRead();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return getStats().getTotal().getBytesWritten();
+    }
+
+    @Override
+    public int getCapacity() {
+        return Database.getBufferPool().getNumPages();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        Database.resizeBufferPool(capacity);
+    }
+
+    @Override
+    public int getResidentFrames() {
+        return getStats().getResidentFrames();
+    }
+
+    @Override
+    public int getPinnedFrames() {
+        return getStats().getPinnedFrames();
+    }
+
+    @Override
+    public int getDirtyFrames() {
+        return getStats().getDirtyFrames();
+    }
+}
@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * BufferPoolStats is a snapshot of the counters of a BufferPool, as returned
+ * by {@link BufferPool#stats()}. Counters accumulate from the creation of the
+ * pool; frame counts describe the pool at the time of the snapshot.
+ */
+public class BufferPoolStats {
+
+    /**
+     * The event counters of the whole pool, of one table or of one page
+     * category.
+     */
+    public static class Counters {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long flushes;
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        public Counters(long hits, long misses, long evictions, long flushes,
+                        long bytesRead, long bytesWritten) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.flushes = flushes;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        /**
+         * @return the number of requests served from the pool
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of requests that had to read the page from disk
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the share of requests served from the pool, or 0 if there
+         * were no requests
+         */
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        /**
+         * @return the number of pages evicted to make room for others
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the number of dirty pages written to disk
+         */
+        public long getFlushes() {
+            return flushes;
+        }
+
+        /**
+         * @return the number of bytes read from disk, including read-ahead
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return the number of bytes written to disk
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        Counters plus(Counters other) {
+            return new Counters(hits + other.hits, misses + other.misses,
+                    evictions + other.evictions, flushes + other.flushes,
+                    bytesRead + other.bytesRead, bytesWritten + other.bytesWritten);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRatio=%.3f evictions=%d flushes=%d bytesRead=%d bytesWritten=%d",
+                    hits, misses, getHitRatio(), evictions, flushes, bytesRead, bytesWritten);
+        }
+    }
+
+    private final int capacity;
+    private final int residentFrames;
+    private final int pinnedFrames;
+    private final int dirtyFrames;
+    private final Counters total;
+    private final Map<Integer, Counters> byTable;
+    private final Map<String, Counters> byCategory;
+
+    BufferPoolStats(int capacity, int residentFrames, int pinnedFrames, int dirtyFrames,
+                    Map<Integer, Counters> byTable, Map<String, Counters> byCategory) {
+        this.capacity = capacity;
+        this.residentFrames = residentFrames;
+        this.pinnedFrames = pinnedFrames;
+        this.dirtyFrames = dirtyFrames;
+        this.byTable = Collections.unmodifiableMap(byTable);
+        this.byCategory = Collections.unmodifiableMap(byCategory);
+        Counters sum = new Counters(0, 0, 0, 0, 0, 0);
+        for (Counters counters : byCategory.values()) {
+            sum = sum.plus(counters);
+        }
+        this.total = sum;
+    }
+
+    /**
+     * @return the maximum number of pages in the pool
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of pages in the pool
+     */
+    public int getResidentFrames() {
+        return residentFrames;
+    }
+
+    /**
+     * @return the number of pages in the pool that are pinned
+     */
+    public int getPinnedFrames() {
+        return pinnedFrames;
+    }
+
+    /**
+     * @return the number of pages in the pool that are dirty
+     */
+    public int getDirtyFrames() {
+        return dirtyFrames;
+    }
+
+    /**
+     * @return the counters of the whole pool
+     */
+    public Counters getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the counters of every table the pool has seen, by table id
+     */
+    public Map<Integer, Counters> getByTable() {
+        return byTable;
+    }
+
+    /**
+     * @return the counters of every page category: heap, root_ptr,
+     * internal, leaf, header and other
+     */
+    public Map<String, Counters> getByCategory() {
+        return byCategory;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("capacity=%d resident=%d pinned=%d dirty=%d %s",
+                capacity, residentFrames, pinnedFrames, dirtyFrames, total);
+    }
+}
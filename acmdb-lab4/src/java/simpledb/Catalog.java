@@ -180,6 +180,8 @@ public class Catalog {
                         types.add(Type.INT_TYPE);
                     else if (els2[1].trim().toLowerCase().equals("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("varchar"))
+                        types.add(Type.VARCHAR_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ClockEvictionPolicy implements the CLOCK (second chance) approximation of
+ * LRU. Each cached page sits in a frame with a reference bit; the clock hand
+ * sweeps over the frames, clearing set bits and evicting the first page whose
+ * bit is already clear.
+ * <p>
+ * A newly added page starts with its bit cleared and only gets it set once it
+ * is accessed again. Pages that are read a single time, as during a large
+ * sequential scan, are therefore reclaimed before pages that are hit
+ * repeatedly, such as the internal pages of a B+ tree.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+    private final List<PageId> frames;
+    private final BitSet referenced;
+    private final Map<PageId, Integer> slots;
+    private final Deque<Integer> freeSlots;
+    private int hand;
+
+    public ClockEvictionPolicy() {
+        this.frames = new ArrayList<>();
+        this.referenced = new BitSet();
+        this.slots = new HashMap<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.hand = 0;
+    }
+
+    @Override
+    public void pageAdded(PageId pid) {
+        if (slots.containsKey(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = frames.size();
+            frames.add(pid);
+        } else {
+            slot = freeSlots.pop();
+            frames.set(slot, pid);
+        }
+        referenced.clear(slot);
+        slots.put(pid, slot);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        Integer slot = slots.get(pid);
+        if (slot != null) {
+            referenced.set(slot);
+        }
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        Integer slot = slots.remove(pid);
+        if (slot != null) {
+            frames.set(slot, null);
+            referenced.clear(slot);
+            freeSlots.push(slot);
+        }
+    }
+
+    @Override
+    public PageId evict(java.util.function.Predicate<PageId> evictable) {
+        int n = frames.size();
+        // two full sweeps: the first one may only clear reference bits
+        for (int step = 0; step < 2 * n; step++) {
+            if (hand >= n) {
+                hand = 0;
+            }
+            int slot = hand++;
+            PageId pid = frames.get(slot);
+            if (pid == null) {
+                continue;
+            }
+            if (referenced.get(slot)) {
+                referenced.clear(slot);
+            } else if (evictable.test(pid)) {
+                pageRemoved(pid);
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<PageId> pagesByHeat() {
+        List<PageId> referencedPages = new ArrayList<>();
+        List<PageId> otherPages = new ArrayList<>();
+        for (int slot = 0; slot < frames.size(); slot++) {
+            PageId pid = frames.get(slot);
+            if (pid != null) {
+                (referenced.get(slot) ? referencedPages : otherPages).add(pid);
+            }
+        }
+        referencedPages.addAll(otherPages);
+        return referencedPages;
+    }
+}
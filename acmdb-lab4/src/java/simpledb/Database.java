@@ -2,7 +2,9 @@ package simpledb;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 
 /**
  * Database is a class that initializes several static variables used by the
@@ -16,13 +18,20 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class Database {
     private final static String LOGFILENAME = "log";
+    private final static String HOTPAGESFILENAME = "hotpages";
     private static AtomicReference<Database> _instance = new AtomicReference<Database>(new Database());
+
+    static {
+        BufferPoolMonitor.register();
+    }
     private final Catalog _catalog;
     private final BufferPool _bufferpool;
     private final LogFile _logfile;
+    private final DiskManager _diskmanager;
 
     private Database() {
         _catalog = new Catalog();
+        _diskmanager = new DiskManager();
         _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
         LogFile tmp = null;
         try {
@@ -49,6 +58,13 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Return the disk manager of the static Database instance
+     */
+    public static DiskManager getDiskManager() {
+        return _instance.get()._diskmanager;
+    }
+
     /**
      * Return the catalog of the static Database instance
      */
@@ -61,11 +77,25 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(new BufferPool(pages));
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * whose shards use eviction policies built by the given factory and
+     * return it
+     */
+    public static BufferPool resetBufferPool(int pages, IntFunction<? extends EvictionPolicy> policyFactory) {
+        return resetBufferPool(new BufferPool(pages, policyFactory));
+    }
+
+    private static BufferPool resetBufferPool(BufferPool bufferPool) {
+        _instance.get()._bufferpool.shutdown();
         java.lang.reflect.Field bufferPoolF = null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), bufferPool);
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -79,8 +109,68 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Start reading the pages that were hottest in the buffer pool when the
+     * database was last shut down, if they were saved. Must be called after
+     * the catalog has been loaded.
+     *
+     * @see #shutdown()
+     */
+    public static void preloadBufferPool() {
+        File hotPages = new File(HOTPAGESFILENAME);
+        if (hotPages.exists()) {
+            try {
+                getBufferPool().preloadPages(hotPages);
+            } catch (IOException e) {
+                // a warm start is only an optimization
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Shut the database down: save the hottest pages of the buffer pool and
+     * the free-space maps of heap files for the next start, checkpoint the
+     * log and stop background threads.
+     */
+    public static void shutdown() {
+        BufferPool bufferPool = getBufferPool();
+        try {
+            bufferPool.saveHotPages(new File(HOTPAGESFILENAME));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Iterator<Integer> tableIds = getCatalog().tableIdIterator();
+        while (tableIds.hasNext()) {
+            DbFile file = getCatalog().getDatabaseFile(tableIds.next());
+            if (file instanceof HeapFile) {
+                try {
+                    ((HeapFile) file).saveFreeSpaceMap();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        getLogFile().shutdown();
+        bufferPool.shutdown();
+        getDiskManager().closeAll();
+    }
+
+    /**
+     * Change the number of pages of the buffer pool while it is in use,
+     * keeping the pages it caches as far as they fit.
+     *
+     * @see BufferPool#resize(int)
+     */
+    public static void resizeBufferPool(int pages) {
+        _instance.get()._bufferpool.resize(pages);
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
+        Database old = _instance.get();
+        old._bufferpool.shutdown();
+        old._diskmanager.closeAll();
         _instance.set(new Database());
     }
 
@@ -73,8 +73,12 @@ public class Delete extends Operator {
         }
         fetched = true;
         int count = 0;
-        for (; child.hasNext(); count++) {
-            Database.getBufferPool().deleteTuple(transactionId, child.next());
+        try {
+            for (; child.hasNext(); count++) {
+                Database.getBufferPool().deleteTuple(transactionId, child.next());
+            }
+        } catch (IOException e) {
+            throw new DbException(e.getMessage());
         }
         Tuple tuple = new Tuple(tupleDesc);
         tuple.setField(0, new IntField(count));
@@ -0,0 +1,256 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DiskManager does the page I/O of all DbFiles. It keeps one FileChannel open
+ * per file, so that reading or writing a page costs a single positional
+ * read or write instead of opening and closing the file. Positional I/O
+ * does not move the position of the channel, so any number of threads may
+ * share a channel.
+ * <p>
+ * A thread that is interrupted during I/O closes the channel for everyone;
+ * other threads then reopen it and retry.
+ * <p>
+ * Files of read-mostly tables may instead be read through
+ * {@link #readMapped(File, long, byte[])}, which maps the file into memory
+ * in segments and serves reads from the OS page cache without a system
+ * call. Writes always go through the channel; on the platforms we run on,
+ * mappings see them right away.
+ *
+ * @Threadsafe
+ */
+public class DiskManager {
+    /**
+     * Default size of a mapped segment of a file.
+     */
+    public static final int SEGMENT_SIZE = 1 << 26;
+
+    /**
+     * The read-only mappings of one file. A segment is mapped up to the end
+     * of the file at the time, and mapped again once the file has grown past
+     * it and a read needs the new part.
+     */
+    private static final class Mapping {
+        volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    }
+
+    private final ConcurrentHashMap<File, FileChannel> channels;
+    private final ConcurrentHashMap<File, Mapping> mappings;
+    private final int segmentSize;
+
+    public DiskManager() {
+        this(SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a DiskManager that maps files in segments of the given size.
+     */
+    DiskManager(int segmentSize) {
+        this.channels = new ConcurrentHashMap<>();
+        this.mappings = new ConcurrentHashMap<>();
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Return the channel of a file, opening it if needed.
+     *
+     * @param create whether to create the file if it does not exist; reads
+     *               of a missing file fail instead
+     */
+    private FileChannel channel(File f, boolean create) throws IOException {
+        FileChannel channel = channels.get(f);
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (this) {
+            channel = channels.get(f);
+            if (channel == null) {
+                channel = create
+                        ? FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                                StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+                        : FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+                channels.put(f, channel);
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Forget a channel that was closed under us, unless it has already been
+     * replaced.
+     */
+    private void dropChannel(File f, FileChannel channel) {
+        channels.remove(f, channel);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // it is closed already
+        }
+    }
+
+    /**
+     * Read up to buf.length bytes of a file, starting at the given position.
+     *
+     * @param f the file to read from
+     * @param position the offset in the file of the first byte to read
+     * @param buf the array to read into
+     * @return the number of bytes read, which is less than buf.length only if
+     * the end of the file was reached, or -1 if position is past the end of
+     * the file
+     */
+    public int read(File f, long position, byte[] buf) throws IOException {
+        while (true) {
+            FileChannel channel = channel(f, false);
+            ByteBuffer dst = ByteBuffer.wrap(buf);
+            try {
+                while (dst.hasRemaining()) {
+                    if (channel.read(dst, position + dst.position()) < 0) {
+                        return dst.position() == 0 ? -1 : dst.position();
+                    }
+                }
+                return dst.position();
+            } catch (ClosedByInterruptException e) {
+                dropChannel(f, channel);
+                throw e;
+            } catch (ClosedChannelException e) {
+                dropChannel(f, channel);
+            }
+        }
+    }
+
+    /**
+     * Read up to buf.length bytes of a file, starting at the given position,
+     * from a memory mapping of the file. Behaves like
+     * {@link #read(File, long, byte[])}.
+     */
+    public int readMapped(File f, long position, byte[] buf) throws IOException {
+        int done = 0;
+        while (done < buf.length) {
+            long pos = position + done;
+            int index = (int) (pos / segmentSize);
+            int offset = (int) (pos % segmentSize);
+            int length = Math.min(buf.length - done, segmentSize - offset);
+            MappedByteBuffer segment = segment(f, index, offset + length);
+            if (segment == null || segment.capacity() <= offset) {
+                break;
+            }
+            ByteBuffer src = segment.duplicate();
+            src.position(offset);
+            int n = Math.min(length, src.remaining());
+            src.get(buf, done, n);
+            done += n;
+            if (n < length) {
+                break;
+            }
+        }
+        return done == 0 && buf.length > 0 ? -1 : done;
+    }
+
+    /**
+     * Return a mapping of the segment with the given index that covers at
+     * least its first needed bytes, or as much of them as the file has.
+     * Returns null if the file ends before the segment.
+     */
+    private MappedByteBuffer segment(File f, int index, int needed) throws IOException {
+        Mapping mapping = mappings.get(f);
+        if (mapping == null) {
+            mapping = mappings.computeIfAbsent(f, k -> new Mapping());
+        }
+        MappedByteBuffer[] segments = mapping.segments;
+        if (index < segments.length && segments[index] != null
+                && segments[index].capacity() >= needed) {
+            return segments[index];
+        }
+        synchronized (mapping) {
+            segments = mapping.segments;
+            MappedByteBuffer segment = index < segments.length ? segments[index] : null;
+            if (segment != null && segment.capacity() >= needed) {
+                return segment;
+            }
+            while (true) {
+                FileChannel channel = channel(f, false);
+                try {
+                    long start = (long) index * segmentSize;
+                    long length = Math.min(segmentSize, channel.size() - start);
+                    if (length <= 0 || (segment != null && length <= segment.capacity())) {
+                        return segment;
+                    }
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    break;
+                } catch (ClosedByInterruptException e) {
+                    dropChannel(f, channel);
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    dropChannel(f, channel);
+                }
+            }
+            if (index >= segments.length) {
+                segments = Arrays.copyOf(segments, index + 1);
+            } else {
+                segments = segments.clone();
+            }
+            segments[index] = segment;
+            mapping.segments = segments;
+            return segment;
+        }
+    }
+
+    /**
+     * Write all bytes of data to a file, starting at the given position.
+     * The file grows as needed.
+     *
+     * @param f the file to write to
+     * @param position the offset in the file of the first byte to write
+     * @param data the bytes to write
+     */
+    public void write(File f, long position, byte[] data) throws IOException {
+        while (true) {
+            FileChannel channel = channel(f, true);
+            ByteBuffer src = ByteBuffer.wrap(data);
+            try {
+                while (src.hasRemaining()) {
+                    channel.write(src, position + src.position());
+                }
+                return;
+            } catch (ClosedByInterruptException e) {
+                dropChannel(f, channel);
+                throw e;
+            } catch (ClosedChannelException e) {
+                dropChannel(f, channel);
+            }
+        }
+    }
+
+    /**
+     * Close the channel of a file, if it is open, and drop its mappings.
+     * They are reopened on the next read or write.
+     */
+    public void close(File f) {
+        mappings.remove(f);
+        FileChannel channel = channels.remove(f);
+        if (channel != null) {
+            dropChannel(f, channel);
+        }
+    }
+
+    /**
+     * Close the channels of all files.
+     */
+    public void closeAll() {
+        mappings.clear();
+        for (File f : channels.keySet()) {
+            close(f);
+        }
+    }
+}
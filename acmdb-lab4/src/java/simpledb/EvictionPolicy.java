@@ -0,0 +1,59 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which page the BufferPool drops when it runs out of
+ * frames. The BufferPool reports every page that enters, is accessed in, or
+ * leaves the cache, and asks the policy for a victim when it needs a frame.
+ * <p>
+ * All methods are expected to run in (amortized) constant time, since they
+ * are called on every buffer pool access. Implementations need not be thread
+ * safe; the BufferPool only calls them while holding the latch of the shard
+ * the policy belongs to.
+ *
+ * @see BufferPool#BufferPool(int, java.util.function.IntFunction)
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a page that was not cached has been added to the cache.
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * Called when a cached page is accessed again.
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Called when a page leaves the cache for a reason other than
+     * {@link #evict}, e.g. because it was discarded.
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Choose a page to evict and forget about it.
+     *
+     * @param evictable tells whether a cached page may currently be evicted
+     *                  (for instance, dirty pages may not be)
+     * @return the id of the evicted page, or null if no cached page is
+     * evictable
+     */
+    public PageId evict(java.util.function.Predicate<PageId> evictable);
+
+    /**
+     * Called when the number of pages the policy is expected to manage
+     * changes, because the buffer pool was resized. Policies that do not
+     * depend on it may ignore it.
+     */
+    public default void capacityChanged(int capacity) {
+    }
+
+    /**
+     * Return the pages the policy manages, the ones it would keep longest
+     * first. The BufferPool saves this ranking on shutdown to preload the
+     * hottest pages on the next start; the default has no ranking.
+     */
+    public default java.util.List<PageId> pagesByHeat() {
+        return java.util.Collections.emptyList();
+    }
+}
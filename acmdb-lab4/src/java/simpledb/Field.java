@@ -17,6 +17,24 @@ public interface Field extends Serializable {
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write this field padded to the maximum length of its type, for pages
+     * whose slots all have the same size.
+     *
+     * @param dos The DataOutputStream to write to.
+     * @see Type#parseFixed
+     */
+    default void serializeFixed(DataOutputStream dos) throws IOException {
+        serialize(dos);
+    }
+
+    /**
+     * @return the number of bytes {@link #serialize} writes for this field
+     */
+    default int getSerializedLength() {
+        return getType().getLen();
+    }
+
     /**
      * Compare the value of this field object to the passed in value.
      *
@@ -27,7 +45,8 @@ public interface Field extends Serializable {
     public boolean compare(Predicate.Op op, Field value);
 
     /**
-     * Returns the type of this field (see {@link Type#INT_TYPE} or {@link Type#STRING_TYPE}
+     * Returns the type of this field (see {@link Type#INT_TYPE}, {@link Type#STRING_TYPE} or
+     * {@link Type#VARCHAR_TYPE})
      *
      * @return type of this field
      */
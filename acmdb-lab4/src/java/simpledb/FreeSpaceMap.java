@@ -0,0 +1,135 @@
+package simpledb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap remembers which pages of a HeapFile have an empty slot, so
+ * that an insert can go straight to such a page instead of looking at every
+ * page of the file.
+ * <p>
+ * The map is a hint. HeapPage keeps it up to date as tuples are inserted and
+ * deleted, but aborts do not restore it, so a page may be marked free while
+ * it is full or the other way round. Callers check the page they are given
+ * and report back with {@link #update(int, boolean)}.
+ * <p>
+ * The map is built the first time it is used, from a side file saved by
+ * {@link #save()} if that still matches the file, and otherwise from the
+ * headers of the pages on disk.
+ *
+ * @Threadsafe
+ */
+class FreeSpaceMap {
+    private final HeapFile file;
+    private final File sideFile;
+    private BitSet free;
+    private int lowestFree;
+
+    FreeSpaceMap(HeapFile file) {
+        this.file = file;
+        this.sideFile = new File(file.getFile().getPath() + ".fsm");
+    }
+
+    /**
+     * Return the number of a page that has an empty slot, or -1 if there is
+     * none.
+     */
+    synchronized int findPage() throws IOException {
+        ensureBuilt();
+        int pgNo = free.nextSetBit(lowestFree);
+        if (pgNo >= 0) {
+            lowestFree = pgNo;
+        }
+        return pgNo;
+    }
+
+    /**
+     * Return the number of a page at or after from that has an empty slot,
+     * or -1 if there is none. Used to skip pages with empty slots that are
+     * too small for a variable-length tuple.
+     */
+    synchronized int findPage(int from) throws IOException {
+        ensureBuilt();
+        return free.nextSetBit(Math.max(from, lowestFree));
+    }
+
+    /**
+     * Record whether the given page has an empty slot. Does nothing if the
+     * map has not been built yet; it will be built from the pages on disk.
+     */
+    synchronized void update(int pgNo, boolean hasSpace) {
+        if (free != null) {
+            free.set(pgNo, hasSpace);
+            if (hasSpace && pgNo < lowestFree) {
+                lowestFree = pgNo;
+            }
+        }
+    }
+
+    private void ensureBuilt() throws IOException {
+        if (free != null) {
+            return;
+        }
+        int numPages = file.numPages();
+        BitSet loaded = load(numPages);
+        if (loaded == null) {
+            loaded = new BitSet(numPages);
+            TupleDesc td = file.getTupleDesc();
+            byte[] probe = new byte[HeapPage.getProbeSize(td)];
+            for (int pgNo = 0; pgNo < numPages; pgNo++) {
+                Database.getDiskManager().read(file.getFile(),
+                        (long) pgNo * BufferPool.getPageSize(), probe);
+                if (HeapPage.hasEmptySlot(probe, td)) {
+                    loaded.set(pgNo);
+                }
+            }
+        }
+        free = loaded;
+        lowestFree = 0;
+    }
+
+    private BitSet load(int numPages) {
+        if (!sideFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sideFile)))) {
+            if (in.readInt() != numPages) {
+                return null;
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return BitSet.valueOf(words);
+        } catch (IOException e) {
+            // the side file is only an optimization; rebuild the map instead
+            return null;
+        }
+    }
+
+    /**
+     * Save the map to a side file next to the heap file, so that the next
+     * open does not have to read every page. Does nothing if the map was
+     * never built.
+     */
+    synchronized void save() throws IOException {
+        if (free == null) {
+            return;
+        }
+        long[] words = free.toLongArray();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sideFile)))) {
+            out.writeInt(file.numPages());
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+}
@@ -4,18 +4,50 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * This is a hybrid hash join. It builds a hash table on the left relation
+ * and probes it with the right one. If the left relation does not fit into
+ * the memory budget, both relations are partitioned by the hash of the join
+ * field. The first partition stays in memory as long as it fits; the
+ * others are written to spill files and joined pairwise once the right
+ * relation has been read, recursively with a different hash. Partitions
+ * that are still too big after {@link #MAX_DEPTH} levels, for example
+ * because of many tuples with the same key, are joined with a block
+ * nested-loop {@link Join}.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** The number of partitions the relations are split into at each level. */
+    public static final int MAX_FANOUT = 32;
+    /** The number of times a partition is partitioned again. */
+    public static final int MAX_DEPTH = 3;
+
     private final JoinPredicate predicate;
     private DbIterator child1;
     private DbIterator child2;
+    private int memoryPages = Join.DEFAULT_MEMORY_PAGES;
+    /** The partitioning level, which seeds the hash. */
+    private final int depth;
 
     private final transient Map<Field, List<Tuple>> map;
     private transient Tuple current2;
     private transient Iterator<Tuple> iterator;
+    /**
+     * The spilled partitions of the left and right relation, or null if the
+     * left relation fits into memory. A null left partition is the one kept
+     * in memory.
+     */
+    private transient SpillFile[] buildSpills;
+    private transient SpillFile[] probeSpills;
+    /** Whether the right relation has been read. */
+    private transient boolean probed;
+    /** The next spilled partition to join, and the join of the current one. */
+    private transient int partition;
+    private transient DbIterator partitionJoin;
+    /** The merged schema, computed once rather than for every tuple. */
+    private transient TupleDesc td;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -30,13 +62,26 @@ public class HashEquiJoin extends Operator {
      */
     public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
         // some code goes here
+        this(p, child1, child2, 0);
+    }
+
+    private HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int depth) {
         assert p.getOperator().equals(Predicate.Op.EQUALS);
         this.predicate = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.depth = depth;
         this.map = new HashMap<>();
     }
 
+    /**
+     * Set the number of pages of memory the hash table may use; takes
+     * effect the next time the join is opened.
+     */
+    public void setMemoryPages(int pages) {
+        this.memoryPages = pages;
+    }
+
     public JoinPredicate getJoinPredicate() {
         // some code goes here
         return predicate;
@@ -44,7 +89,10 @@ public class HashEquiJoin extends Operator {
 
     public TupleDesc getTupleDesc() {
         // some code goes here
-        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        if (td == null) {
+            td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        }
+        return td;
     }
     
     public String getJoinField1Name() {
@@ -61,22 +109,147 @@ public class HashEquiJoin extends Operator {
             TransactionAbortedException {
         // some code goes here
         map.clear();
+        buildSpills = null;
         child1.open();
+        int limit = Join.tuplesInMemory(memoryPages, child1.getTupleDesc());
+        int resident = 0;
         while (child1.hasNext()) {
             Tuple current1 = child1.next();
             Field field = current1.getField(predicate.getField1());
-            if (!map.containsKey(field)) {
-                map.put(field, new ArrayList<>());
+            if (buildSpills != null) {
+                int p = partitionOf(field);
+                if (p != 0 || buildSpills[0] != null) {
+                    buildSpills[p].add(current1);
+                    continue;
+                }
+            }
+            map.computeIfAbsent(field, k -> new ArrayList<>()).add(current1);
+            if (++resident > limit) {
+                if (buildSpills == null) {
+                    resident = startPartitioning();
+                }
+                if (resident > limit) {
+                    spillResident();
+                    resident = 0;
+                }
             }
-            map.get(field).add(current1);
         }
         child2.open();
+        resetProbe();
         super.open();
     }
 
+    /**
+     * Split the hash table into partitions, and write all but the first one
+     * to spill files.
+     *
+     * @return the number of tuples left in memory
+     */
+    private int startPartitioning() throws DbException {
+        buildSpills = new SpillFile[fanout()];
+        for (int p = 1; p < buildSpills.length; p++) {
+            buildSpills[p] = new SpillFile(child1.getTupleDesc());
+        }
+        int resident = 0;
+        for (Iterator<Map.Entry<Field, List<Tuple>>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Field, List<Tuple>> entry = it.next();
+            int p = partitionOf(entry.getKey());
+            if (p == 0) {
+                resident += entry.getValue().size();
+            } else {
+                for (Tuple t : entry.getValue()) {
+                    buildSpills[p].add(t);
+                }
+                it.remove();
+            }
+        }
+        return resident;
+    }
+
+    /**
+     * Write the partition kept in memory to a spill file as well.
+     */
+    private void spillResident() throws DbException {
+        buildSpills[0] = new SpillFile(child1.getTupleDesc());
+        for (List<Tuple> tuples : map.values()) {
+            for (Tuple t : tuples) {
+                buildSpills[0].add(t);
+            }
+        }
+        map.clear();
+    }
+
+    private int fanout() {
+        return Math.max(2, Math.min(MAX_FANOUT, memoryPages));
+    }
+
+    private int partitionOf(Field field) {
+        return partitionOf(field, depth, buildSpills.length);
+    }
+
+    /**
+     * Returns the partition of a join field value at a partitioning level.
+     * The level seeds a full 32-bit finalizer (murmur3 fmix32), so that the
+     * values of one partition are spread over all partitions of the next
+     * level.
+     */
+    static int partitionOf(Field field, int depth, int fanout) {
+        int h = field.hashCode() + depth * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % fanout;
+    }
+
+    /**
+     * Start reading the right relation from the beginning; the spilled
+     * partitions of the left relation are kept.
+     */
+    private void resetProbe() throws DbException {
+        closePartitionJoin();
+        deleteSpills(probeSpills);
+        probeSpills = null;
+        if (buildSpills != null) {
+            probeSpills = new SpillFile[buildSpills.length];
+            for (int p = 0; p < buildSpills.length; p++) {
+                if (buildSpills[p] != null) {
+                    probeSpills[p] = new SpillFile(child2.getTupleDesc());
+                }
+            }
+        }
+        current2 = null;
+        iterator = null;
+        probed = false;
+        partition = 0;
+    }
+
+    private void closePartitionJoin() {
+        if (partitionJoin != null) {
+            partitionJoin.close();
+            partitionJoin = null;
+        }
+    }
+
+    private static void deleteSpills(SpillFile[] spills) {
+        if (spills != null) {
+            for (SpillFile spill : spills) {
+                if (spill != null) {
+                    spill.delete();
+                }
+            }
+        }
+    }
+
     public void close() {
         // some code goes here
         super.close();
+        closePartitionJoin();
+        deleteSpills(buildSpills);
+        deleteSpills(probeSpills);
+        buildSpills = null;
+        probeSpills = null;
         map.clear();
         child1.close();
         child2.close();
@@ -85,6 +258,7 @@ public class HashEquiJoin extends Operator {
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
         child2.rewind();
+        resetProbe();
     }
 
     /**
@@ -107,13 +281,37 @@ public class HashEquiJoin extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
+        if (!probed) {
+            Tuple t = fetchNextProbe();
+            if (t != null) {
+                return t;
+            }
+            probed = true;
+        }
+        return fetchNextPartition();
+    }
+
+    /**
+     * Join the right relation with the partition in memory, and write the
+     * tuples of the other partitions to their spill files.
+     */
+    private Tuple fetchNextProbe() throws TransactionAbortedException, DbException {
         while (true) {
             while (current2 == null) {
                 if (!child2.hasNext()) {
                     return null;
                 }
                 current2 = child2.next();
-                List<Tuple> tuples = map.getOrDefault(current2.getField(predicate.getField2()), null);
+                Field field = current2.getField(predicate.getField2());
+                if (buildSpills != null) {
+                    int p = partitionOf(field);
+                    if (probeSpills[p] != null) {
+                        probeSpills[p].add(current2);
+                        current2 = null;
+                        continue;
+                    }
+                }
+                List<Tuple> tuples = map.get(field);
                 if (tuples != null) {
                     iterator = tuples.iterator();
                 } else {
@@ -122,13 +320,46 @@ public class HashEquiJoin extends Operator {
             }
             if (iterator.hasNext()) {
                 Tuple current1 = iterator.next();
-                return Tuple.merge(current1, current2);
+                return Tuple.merge(getTupleDesc(), current1, current2);
             } else {
                 current2 = null;
             }
         }
     }
 
+    /**
+     * Join the spilled partitions one pair at a time.
+     */
+    private Tuple fetchNextPartition() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (partitionJoin != null) {
+                if (partitionJoin.hasNext()) {
+                    return partitionJoin.next();
+                }
+                closePartitionJoin();
+            }
+            if (buildSpills == null || partition == buildSpills.length) {
+                return null;
+            }
+            SpillFile build = buildSpills[partition];
+            SpillFile probe = probeSpills[partition];
+            partition++;
+            if (build == null || build.size() == 0 || probe.size() == 0) {
+                continue;
+            }
+            if (depth + 1 < MAX_DEPTH) {
+                HashEquiJoin join = new HashEquiJoin(predicate, build.iterator(), probe.iterator(), depth + 1);
+                join.setMemoryPages(memoryPages);
+                partitionJoin = join;
+            } else {
+                Join join = new Join(predicate, build.iterator(), probe.iterator());
+                join.setMemoryPages(memoryPages);
+                partitionJoin = join;
+            }
+            partitionJoin.open();
+        }
+    }
+
     @Override
     public DbIterator[] getChildren() {
         // some code goes here
@@ -141,6 +372,7 @@ public class HashEquiJoin extends Operator {
         assert children.length == 2;
         this.child1 = children[0];
         this.child2 = children[1];
+        this.td = null;
     }
     
 }
@@ -2,7 +2,6 @@ package simpledb;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -20,14 +19,23 @@ import java.util.NoSuchElementException;
  * @see simpledb.HeapPage#HeapPage
  */
 public class HeapFile implements DbFile {
+    /**
+     * Number of pages bulkInsert fills before writing them out at once.
+     */
+    private static final int BULK_BATCH_PAGES = 64;
+
     private File file;
     private TupleDesc tupleDesc;
+    private volatile boolean memoryMapped;
+    private final FreeSpaceMap freeSpace;
 
     public class HeapFileIterator implements DbFileIterator {
         private HeapFile file;
         private TransactionId tid;
         private int pageIndex;
+        private HeapPageId pinnedPageId;
         private Iterator<Tuple> tupleIterator;
+        private ScanRing ring;
 
         public HeapFileIterator(HeapFile f, TransactionId tid) {
             this.file = f;
@@ -37,11 +45,31 @@ public class HeapFile implements DbFile {
         @Override
         public void open() throws DbException, TransactionAbortedException {
             this.pageIndex = 0;
+            // tables that do not fit into the buffer pool are read through a
+            // ring of frames, so that they do not evict everybody else's pages
+            this.ring = Database.getBufferPool().scanRing(file.numPages());
             if (file.numPages() == 0) {
                 this.tupleIterator = new ArrayList<Tuple>().iterator();
             } else {
-                this.tupleIterator = ((HeapPage) Database.getBufferPool().getPage(
-                        tid, new HeapPageId(file.getId(), this.pageIndex), Permissions.READ_ONLY)).iterator();
+                this.tupleIterator = pin(pageIndex).iterator();
+            }
+        }
+
+        /**
+         * Pin the page we are about to iterate over, and unpin the previous one.
+         */
+        private HeapPage pin(int pageNo) throws DbException, TransactionAbortedException {
+            HeapPageId pid = new HeapPageId(file.getId(), pageNo);
+            HeapPage page = (HeapPage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY, ring);
+            unpin();
+            pinnedPageId = pid;
+            return page;
+        }
+
+        private void unpin() {
+            if (pinnedPageId != null) {
+                Database.getBufferPool().unpinPage(tid, pinnedPageId);
+                pinnedPageId = null;
             }
         }
 
@@ -56,7 +84,7 @@ public class HeapFile implements DbFile {
                 return false;
             } else {
                 Iterator<Tuple> tmp = ((HeapPage) Database.getBufferPool().getPage(
-                        tid, new HeapPageId(file.getId(), pageIndex + 1), Permissions.READ_ONLY)).iterator();
+                        tid, new HeapPageId(file.getId(), pageIndex + 1), Permissions.READ_ONLY, ring)).iterator();
                 return tmp.hasNext();
             }
         }
@@ -71,8 +99,7 @@ public class HeapFile implements DbFile {
                     throw new NoSuchElementException();
                 }
                 pageIndex += 1;
-                tupleIterator = ((HeapPage) Database.getBufferPool().getPage(
-                        tid, new HeapPageId(file.getId(), pageIndex), Permissions.READ_ONLY)).iterator();
+                tupleIterator = pin(pageIndex).iterator();
             }
             return tupleIterator.next();
         }
@@ -85,7 +112,9 @@ public class HeapFile implements DbFile {
 
         @Override
         public void close() {
+            unpin();
             tupleIterator = null;
+            ring = null;
         }
     }
 
@@ -99,6 +128,7 @@ public class HeapFile implements DbFile {
         // some code goes here
         this.file = f;
         this.tupleDesc = td;
+        this.freeSpace = new FreeSpaceMap(this);
     }
 
     /**
@@ -111,6 +141,24 @@ public class HeapFile implements DbFile {
         return file;
     }
 
+    /**
+     * Choose whether pages are read from a memory mapping of the file rather
+     * than with a read per page. Worth it for tables that are read a lot and
+     * rarely written.
+     *
+     * @see DiskManager#readMapped(File, long, byte[])
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Returns whether pages are read from a memory mapping of the file.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere ensure that each
@@ -139,12 +187,16 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) {
         // some code goes here
         try {
-            RandomAccessFile wrapper = new RandomAccessFile(file, "r");
             byte[] buffer = new byte[BufferPool.getPageSize()];
-            wrapper.seek(pid.pageNumber() * BufferPool.getPageSize());
-            wrapper.read(buffer);
-            wrapper.close();
-            return new HeapPage((HeapPageId) pid, buffer);
+            long position = (long) pid.pageNumber() * BufferPool.getPageSize();
+            if (memoryMapped) {
+                Database.getDiskManager().readMapped(file, position, buffer);
+            } else {
+                Database.getDiskManager().read(file, position, buffer);
+            }
+            HeapPage page = new HeapPage((HeapPageId) pid, buffer);
+            page.setFreeSpaceMap(freeSpace);
+            return page;
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -155,12 +207,9 @@ public class HeapFile implements DbFile {
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
-        RandomAccessFile handle = new RandomAccessFile(file, "rw");
         PageId pid = page.getId();
         byte[] data = page.getPageData();
-        handle.seek(pid.pageNumber() * BufferPool.getPageSize());
-        handle.write(data, 0, BufferPool.getPageSize());
-        handle.close();
+        Database.getDiskManager().write(file, (long) pid.pageNumber() * BufferPool.getPageSize(), data);
     }
 
     /**
@@ -177,24 +226,129 @@ public class HeapFile implements DbFile {
         // some code goes here
         List<Page> dirtedPages = new ArrayList<>();
         int tableId = getId();
-        for (int i = 0, n = numPages(); i < n; i++) {
+        for (int i = freeSpace.findPage(); i >= 0; i = freeSpace.findPage(i + 1)) {
             HeapPageId pid = new HeapPageId(tableId, i);
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
-            if (page.getNumEmptySlots() != 0) {
+            boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            if (page.canInsert(t)) {
+                page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
                 page.insertTuple(t);
                 dirtedPages.add(page);
                 return (ArrayList<Page>) dirtedPages;
             }
+            if (page.getNumEmptySlots() == 0) {
+                // the map was out of date
+                freeSpace.update(i, false);
+            }
+            // a full page is of no use to us, so there is no need to keep it
+            // locked unless this transaction had touched it before
+            if (!locked) {
+                Database.getBufferPool().releasePage(tid, pid);
+            }
         }
-        HeapPageId pid = new HeapPageId(this.getId(), this.numPages());
-        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        HeapPageId pid;
+        synchronized (this) {
+            pid = new HeapPageId(tableId, numPages());
+            HeapPage empty = new HeapPage(pid, HeapPage.createEmptyPageData());
+            writePage(empty);
+            empty.setFreeSpaceMap(freeSpace);
+        }
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
         page.insertTuple(t);
         dirtedPages.add(page);
-        writePage(page);
         return (ArrayList<Page>) dirtedPages;
         // not necessary for lab1
     }
 
+    /**
+     * Returns whether inserts into this file would all go to new pages,
+     * because no page but the last one has an empty slot. Such files can take
+     * {@link #bulkInsert(TransactionId, DbIterator)} without wasting space.
+     */
+    public boolean isAppendOnly() throws IOException {
+        int pgNo = freeSpace.findPage();
+        return pgNo < 0 || pgNo == numPages() - 1;
+    }
+
+    /**
+     * Returns whether some page of this file has an empty slot, as far as
+     * the free-space map knows.
+     */
+    public boolean hasFreeSpace() throws IOException {
+        return freeSpace.findPage() >= 0;
+    }
+
+    /**
+     * Append all tuples of an open iterator to new pages at the end of this
+     * file on behalf of transaction tid. Pages are filled in memory and
+     * written in large sequential batches without going through the buffer
+     * pool, after they have been logged; they stay locked by tid, and an
+     * abort empties them again. Free slots on existing pages are not used.
+     *
+     * @return the number of tuples inserted
+     */
+    public int bulkInsert(TransactionId tid, DbIterator tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        int batchSize = HeapPage.getNumTuples(tupleDesc) * BULK_BATCH_PAGES;
+        List<Tuple> batch = new ArrayList<>(batchSize);
+        int count = 0;
+        while (tuples.hasNext()) {
+            batch.add(tuples.next());
+            if (batch.size() == batchSize) {
+                appendPages(tid, batch);
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            appendPages(tid, batch);
+            count += batch.size();
+        }
+        return count;
+    }
+
+    /**
+     * Fill new pages at the end of the file with a batch of tuples and write
+     * them with a single write.
+     */
+    private void appendPages(TransactionId tid, List<Tuple> batch)
+            throws DbException, IOException, TransactionAbortedException {
+        int pageSize = BufferPool.getPageSize();
+        List<HeapPage> pages = new ArrayList<>();
+        synchronized (this) {
+            int first = numPages();
+            HeapPage page = null;
+            for (Tuple t : batch) {
+                if (page == null || !page.canInsert(t)) {
+                    page = new HeapPage(new HeapPageId(getId(), first + pages.size()), HeapPage.createEmptyPageData());
+                    pages.add(page);
+                }
+                page.insertTuple(t);
+            }
+            int numNew = pages.size();
+            byte[] data = new byte[numNew * pageSize];
+            for (int i = 0; i < numNew; i++) {
+                System.arraycopy(pages.get(i).getPageData(), 0, data, i * pageSize, pageSize);
+            }
+            Database.getBufferPool().appendPages(tid, pages);
+            Database.getDiskManager().write(file, (long) first * pageSize, data);
+            Database.getBufferPool().appendedPages(pages);
+            // only once they are on disk may inserts be sent to the new pages
+            for (HeapPage appended : pages) {
+                appended.setFreeSpaceMap(freeSpace);
+            }
+        }
+    }
+
+    /**
+     * Save the map of pages with empty slots next to the file, so that it
+     * does not have to be rebuilt from every page when the file is opened
+     * again.
+     */
+    public void saveFreeSpaceMap() throws IOException {
+        freeSpace.save();
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
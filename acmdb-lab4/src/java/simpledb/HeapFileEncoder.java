@@ -2,6 +2,7 @@ package simpledb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -93,6 +94,13 @@ public class HeapFileEncoder {
                                int numFields, Type[] typeAr, char fieldSeparator)
             throws IOException {
 
+        for (int i = 0; i < numFields; i++) {
+            if (typeAr[i].isVariableLength()) {
+                convertSlotted(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator);
+                return;
+            }
+        }
+
         int nrecbytes = 0;
         for (int i = 0; i < numFields; i++) {
             nrecbytes += typeAr[i].getLen();
@@ -224,4 +232,65 @@ public class HeapFileEncoder {
         br.close();
         os.close();
     }
+
+    /**
+     * Like {@link #convert(File, File, int, int, Type[], char)}, for tables
+     * with variable-length fields, which are stored in slotted pages.
+     *
+     * @see HeapPage
+     */
+    private static void convertSlotted(File inFile, File outFile, int npagebytes,
+                                       int numFields, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        int minrecbytes = 0;
+        for (int i = 0; i < numFields; i++) {
+            minrecbytes += typeAr[i].getMinLen();
+        }
+        int nrecords = (npagebytes - 2) / (minrecbytes + 4);
+        String separator = Pattern.quote(String.valueOf(fieldSeparator));
+
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        FileOutputStream os = new FileOutputStream(outFile);
+        ArrayList<byte[]> records = new ArrayList<byte[]>();
+        int free = npagebytes - 2;
+        int npages = 0;
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.isEmpty())
+                continue;
+            String[] values = line.split(separator, -1);
+            ByteArrayOutputStream recordBAOS = new ByteArrayOutputStream();
+            DataOutputStream recordStream = new DataOutputStream(recordBAOS);
+            for (int i = 0; i < numFields; i++) {
+                String s = i < values.length ? values[i].trim() : "";
+                if (typeAr[i] == Type.INT_TYPE) {
+                    try {
+                        recordStream.writeInt(Integer.parseInt(s));
+                    } catch (NumberFormatException e) {
+                        System.out.println("BAD LINE : " + s);
+                        recordStream.writeInt(0);
+                    }
+                } else {
+                    new StringField(s, Type.STRING_LEN, typeAr[i]).serialize(recordStream);
+                }
+            }
+            recordStream.flush();
+            byte[] record = recordBAOS.toByteArray();
+
+            if (records.size() == nrecords || record.length + 4 > free) {
+                os.write(HeapPage.createSlottedPageData(records, npagebytes));
+                records.clear();
+                free = npagebytes - 2;
+                npages++;
+            }
+            records.add(record);
+            free -= record.length + 4;
+        }
+        // flush the last page, or an empty page if the file is empty
+        if (!records.isEmpty() || npages == 0) {
+            os.write(HeapPage.createSlottedPageData(records, npagebytes));
+        }
+        br.close();
+        os.close();
+    }
 }
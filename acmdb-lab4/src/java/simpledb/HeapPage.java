@@ -2,13 +2,22 @@ package simpledb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * Pages of tables whose tuples all have the same size use fixed-size slots;
+ * see the constructor. Pages of tables with variable-length fields are
+ * slotted pages: a two-byte count of directory entries, followed by one
+ * entry per slot holding the two-byte offset and length of its tuple, or a
+ * zero offset if the slot is empty. Tuples are packed at the end of the
+ * page.
  *
  * @see HeapFile
  * @see BufferPool
@@ -17,13 +26,49 @@ public class HeapPage implements Page {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
+    /**
+     * The header bitmap, 64 slots to a word: slot i is bit i % 64 of word
+     * i / 64, which matches the byte order of the header on disk.
+     */
+    final long header[];
+    /**
+     * The number of bytes the header takes on disk.
+     */
+    private final int headerSize;
     final Tuple tuples[];
     final int numSlots;
+    /**
+     * Whether this page uses the slotted format for variable-length tuples.
+     */
+    private final boolean slotted;
+    /**
+     * For slotted pages: the offset in data of the tuple in each slot, and
+     * the length of the tuple in each used slot.
+     */
+    private int[] slotOffsets;
+    private int[] slotLengths;
+    /**
+     * For slotted pages: the number of bytes taken by the tuples.
+     */
+    private int tupleBytes;
+    /**
+     * The bytes this page was built from or last serialized to. Slots whose
+     * tuple has not been decoded yet are decoded from here; the array is
+     * never written to.
+     */
+    private byte[] data;
+    /**
+     * Whether the page was changed since data was taken.
+     */
+    private boolean modified;
 //    private final Byte oldDataLock = new Byte((byte) 0);
     private final Byte oldDataLock = (byte) 0;
     byte[] oldData;
     private TransactionId dirtier;
+    /**
+     * The free-space map of the file this page belongs to, if any.
+     */
+    private FreeSpaceMap freeSpace;
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -37,6 +82,7 @@ public class HeapPage implements Page {
      * <p>
      * ceiling(no. tuple slots / 8)
      * <p>
+     * Slotted pages are described in the class comment.
      *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
@@ -45,26 +91,112 @@ public class HeapPage implements Page {
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.slotted = td.isVariableLength();
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length < BufferPool.getPageSize()) {
+            throw new IOException("page data too short");
+        }
+        this.data = data;
+
+        // read the header slots of this page; tuples are decoded from data
+        // the first time they are asked for
+        headerSize = getHeaderSize();
+        if (slotted) {
+            header = new long[(numSlots + 63) / 64];
+            slotOffsets = new int[numSlots];
+            slotLengths = new int[numSlots];
+            readDirectory();
+        } else {
+            header = readWords(data, headerSize);
+        }
+        tuples = new Tuple[numSlots];
 
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++) {
-            header[i] = dis.readByte();
+        setBeforeImage();
+    }
+
+    /**
+     * Read the slot directory of a slotted page from data.
+     */
+    private void readDirectory() throws IOException {
+        int dirLen = readShort(data, 0);
+        if (dirLen > numSlots) {
+            throw new IOException("corrupt slot directory");
         }
+        Arrays.fill(header, 0L);
+        tupleBytes = 0;
+        for (int i = 0; i < dirLen; i++) {
+            int offset = readShort(data, 2 + 4 * i);
+            if (offset != 0) {
+                header[i >>> 6] |= 1L << i;
+                slotOffsets[i] = offset;
+                slotLengths[i] = readShort(data, 4 + 4 * i);
+                tupleBytes += slotLengths[i];
+            }
+        }
+    }
 
-        tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++)
-                tuples[i] = readNextTuple(dis, i);
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
+    /**
+     * Read a bitmap of len bytes into words of 64 bits, the first byte
+     * going to the lowest bits of the first word.
+     */
+    private static long[] readWords(byte[] b, int len) {
+        long[] words = new long[(len + 7) / 8];
+        for (int i = 0; i < len; i++) {
+            words[i >>> 3] |= (b[i] & 0xffL) << ((i & 7) * 8);
         }
-        dis.close();
+        return words;
+    }
 
-        setBeforeImage();
+    /**
+     * Counts the bits set in a bitmap.
+     */
+    private static int countBits(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return ((b[off] & 0xff) << 8) | (b[off + 1] & 0xff);
+    }
+
+    private static void writeShort(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    /**
+     * Lay out a slotted page. Null entries are empty slots.
+     *
+     * @param slots the serialized tuples, by slot
+     * @param pageSize the number of bytes per page
+     * @return the page data
+     * @throws IllegalArgumentException if the tuples do not fit on a page
+     */
+    static byte[] createSlottedPageData(List<byte[]> slots, int pageSize) {
+        int dirLen = slots.size();
+        while (dirLen > 0 && slots.get(dirLen - 1) == null) {
+            dirLen--;
+        }
+        byte[] page = new byte[pageSize];
+        writeShort(page, 0, dirLen);
+        int end = page.length;
+        for (int i = 0; i < dirLen; i++) {
+            byte[] tuple = slots.get(i);
+            if (tuple == null) {
+                continue;
+            }
+            end -= tuple.length;
+            if (end < 2 + 4 * dirLen) {
+                throw new IllegalArgumentException("tuples do not fit on a page");
+            }
+            System.arraycopy(tuple, 0, page, end, tuple.length);
+            writeShort(page, 2 + 4 * i, end);
+            writeShort(page, 4 + 4 * i, tuple.length);
+        }
+        return page;
     }
 
     /**
@@ -88,6 +220,18 @@ public class HeapPage implements Page {
      */
     private int getNumTuples() {
         // some code goes here
+        return getNumTuples(td);
+    }
+
+    /**
+     * Retrieve the number of tuple slots on a page of a HeapFile with the
+     * given TupleDesc.
+     */
+    static int getNumTuples(TupleDesc td) {
+        if (td.isVariableLength()) {
+            // as many of the smallest tuples as fit with their directory entries
+            return (BufferPool.getPageSize() - 2) / (td.getMinSize() + 4);
+        }
         return Math.floorDiv(BufferPool.getPageSize() * 8, td.getSize() * 8 + 1);
     }
 
@@ -101,6 +245,70 @@ public class HeapPage implements Page {
         return (int) Math.ceil(numSlots / 8.0);
     }
 
+    /**
+     * Computes the number of bytes in the header of a page in a HeapFile with
+     * the given TupleDesc.
+     */
+    static int getHeaderSize(TupleDesc td) {
+        return (int) Math.ceil(getNumTuples(td) / 8.0);
+    }
+
+    /**
+     * Returns the number of bytes at the start of a page of a HeapFile with
+     * the given TupleDesc that {@link #hasEmptySlot} needs to look at.
+     */
+    static int getProbeSize(TupleDesc td) {
+        return td.isVariableLength() ? BufferPool.getPageSize() : getHeaderSize(td);
+    }
+
+    /**
+     * Returns whether a page of a HeapFile with the given TupleDesc has an
+     * empty slot, given the first getProbeSize(td) bytes of its data.
+     */
+    static boolean hasEmptySlot(byte[] probe, TupleDesc td) {
+        int numSlots = getNumTuples(td);
+        if (td.isVariableLength()) {
+            int dirLen = readShort(probe, 0);
+            int used = 0;
+            int bytes = 0;
+            for (int i = 0; i < dirLen; i++) {
+                if (readShort(probe, 2 + 4 * i) != 0) {
+                    used++;
+                    bytes += readShort(probe, 4 + 4 * i);
+                }
+            }
+            return emptySlots(td, numSlots, used, dirLen, bytes) > 0;
+        }
+        return countBits(readWords(probe, getHeaderSize(td))) < numSlots;
+    }
+
+    /**
+     * Returns how many of the smallest tuples still fit on a slotted page:
+     * first into unused directory entries, then with new ones.
+     */
+    private static int emptySlots(TupleDesc td, int numSlots, int used, int dirLen, int tupleBytes) {
+        int minSize = td.getMinSize();
+        int free = BufferPool.getPageSize() - 2 - 4 * dirLen - tupleBytes;
+        int holes = Math.min(dirLen - used, free / minSize);
+        int fit = holes + (free - holes * minSize) / (minSize + 4);
+        return Math.min(fit, numSlots - used);
+    }
+
+    /**
+     * Keep the given free-space map up to date as tuples are inserted into
+     * and deleted from this page, starting with the current state of the
+     * page. Pages without a map, such as those built by tests or by
+     * HeapFileEncoder, do not report their free space.
+     *
+     * @param freeSpace the map of the file this page belongs to, or null
+     */
+    void setFreeSpaceMap(FreeSpaceMap freeSpace) {
+        this.freeSpace = freeSpace;
+        if (freeSpace != null) {
+            freeSpace.update(pid.pageNumber(), getNumEmptySlots() > 0);
+        }
+    }
+
     /**
      * Return a view of this page before it was modified
      * -- used by recovery
@@ -111,7 +319,9 @@ public class HeapPage implements Page {
             synchronized (oldDataLock) {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid, oldDataRef);
+            HeapPage beforeImage = new HeapPage(pid, oldDataRef);
+            beforeImage.freeSpace = freeSpace;
+            return beforeImage;
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -121,8 +331,10 @@ public class HeapPage implements Page {
     }
 
     public void setBeforeImage() {
+        // getPageData hands out an array that is never written to again
+        byte[] pageData = getPageData();
         synchronized (oldDataLock) {
-            oldData = getPageData().clone();
+            oldData = pageData;
         }
     }
 
@@ -135,26 +347,41 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Return the tuple in a used slot, decoding it from the page data if
+     * this has not been done yet.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    private synchronized Tuple tuple(int slotId) {
+        Tuple t = tuples[slotId];
+        if (t == null) {
+            t = readTuple(slotId);
+            tuples[slotId] = t;
         }
+        return t;
+    }
 
+    /**
+     * Decode the tuple in a slot from the page data.
+     */
+    private Tuple readTuple(int slotId) throws NoSuchElementException {
         // read fields in the tuple
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
+        if (!slotted && td.isAllInt()) {
+            // read the ints straight from the page, without boxing them
+            int start = headerSize + slotId * td.getSize();
+            for (int j = 0; j < td.numFields(); j++) {
+                int offset = start + td.getOffset(j);
+                t.setInt(j, ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                        | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff));
+            }
+            return t;
+        }
+        DataInputStream dis = slotted
+                ? new DataInputStream(new ByteArrayInputStream(
+                        data, slotOffsets[slotId], slotLengths[slotId]))
+                : new DataInputStream(new ByteArrayInputStream(
+                        data, headerSize + slotId * td.getSize(), td.getSize()));
         try {
             for (int j = 0; j < td.numFields(); j++) {
                 Field f = td.getFieldType(j).parse(dis);
@@ -176,18 +403,28 @@ public class HeapPage implements Page {
      * array generated by getPageData to the HeapPage constructor and
      * have it produce an identical HeapPage object.
      *
+     * <p>
+     * The array is shared, not copied, as long as the page does not change,
+     * and must not be modified.
+     *
      * @return A byte array correspond to the bytes of this page.
      * @see #HeapPage
      */
-    public byte[] getPageData() {
+    public synchronized byte[] getPageData() {
+        if (!modified) {
+            return data;
+        }
+        if (slotted) {
+            return getSlottedPageData();
+        }
         int len = BufferPool.getPageSize();
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
 
         // create the header of the page
-        for (int i = 0; i < header.length; i++) {
+        for (int i = 0; i < headerSize; i++) {
             try {
-                dos.writeByte(header[i]);
+                dos.writeByte((int) (header[i >>> 3] >>> ((i & 7) * 8)));
             } catch (IOException e) {
                 // this really shouldn't happen
                 e.printStackTrace();
@@ -210,10 +447,24 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot that was never decoded
+            if (tuples[i] == null) {
+                try {
+                    dos.write(data, headerSize + i * td.getSize(), td.getSize());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
                 try {
+                    if (td.isAllInt()) {
+                        dos.writeInt(tuples[i].getInt(j));
+                        continue;
+                    }
+                    Field f = tuples[i].getField(j);
                     f.serialize(dos);
 
                 } catch (IOException e) {
@@ -223,7 +474,7 @@ public class HeapPage implements Page {
         }
 
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
+        int zerolen = BufferPool.getPageSize() - (headerSize + td.getSize() * tuples.length); //- numSlots * td.getSize();
         byte[] zeroes = new byte[zerolen];
         try {
             dos.write(zeroes, 0, zerolen);
@@ -237,7 +488,42 @@ public class HeapPage implements Page {
             e.printStackTrace();
         }
 
-        return baos.toByteArray();
+        data = baos.toByteArray();
+        modified = false;
+        return data;
+    }
+
+    private byte[] getSlottedPageData() {
+        List<byte[]> slots = new ArrayList<>(numSlots);
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                slots.add(null);
+            } else if (tuples[i] == null) {
+                // never decoded
+                slots.add(Arrays.copyOfRange(data, slotOffsets[i], slotOffsets[i] + slotLengths[i]));
+            } else {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(slotLengths[i]);
+                DataOutputStream dos = new DataOutputStream(baos);
+                try {
+                    for (int j = 0; j < td.numFields(); j++) {
+                        tuples[i].getField(j).serialize(dos);
+                    }
+                    dos.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                slots.add(baos.toByteArray());
+            }
+        }
+        data = createSlottedPageData(slots, BufferPool.getPageSize());
+        try {
+            readDirectory();
+        } catch (IOException e) {
+            // we just wrote it
+            throw new IllegalStateException(e);
+        }
+        modified = false;
+        return data;
     }
 
     /**
@@ -257,6 +543,12 @@ public class HeapPage implements Page {
         if (tuplePID.equals(pid)) {
             if (isSlotUsed(tupleIndex)) {
                 markSlotUsed(tupleIndex, false);
+                if (slotted) {
+                    tupleBytes -= slotLengths[tupleIndex];
+                }
+                if (freeSpace != null) {
+                    freeSpace.update(pid.pageNumber(), true);
+                }
             } else {
                 throw new DbException("The tuple is already cleared.");
             }
@@ -276,18 +568,64 @@ public class HeapPage implements Page {
     public void insertTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
-        if (getNumEmptySlots() == 0) {
+        if (!canInsert(t)) {
             throw new DbException("The page is full.");
         } else {
-            for (int i = 0; i < numSlots; i++) {
-                if (!isSlotUsed(i)) {
-                    markSlotUsed(i, true);
-                    tuples[i] = t;
-                    tuples[i].setRecordId(new RecordId(pid, i));
-                    break;
-                }
+            int i = nextFreeSlot();
+            markSlotUsed(i, true);
+            if (slotted) {
+                slotLengths[i] = td.getSize(t);
+                tupleBytes += slotLengths[i];
+            }
+            tuples[i] = t;
+            tuples[i].setRecordId(new RecordId(pid, i));
+            if (freeSpace != null && getNumEmptySlots() == 0) {
+                freeSpace.update(pid.pageNumber(), false);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given tuple fits into this page. On pages with
+     * fixed-size slots, this is the case if any slot is empty; on slotted
+     * pages, the tuple also needs enough free bytes.
+     */
+    public boolean canInsert(Tuple t) {
+        if (!slotted) {
+            return getNumEmptySlots() > 0;
+        }
+        int slot = nextFreeSlot();
+        if (slot == numSlots) {
+            return false;
+        }
+        int dirLen = directoryLength();
+        int needed = td.getSize(t) + 4 * Math.max(0, slot + 1 - dirLen);
+        return needed <= BufferPool.getPageSize() - 2 - 4 * dirLen - tupleBytes;
+    }
+
+    /**
+     * Returns the number of directory entries a slotted page needs: one
+     * past the last used slot.
+     */
+    private int directoryLength() {
+        for (int w = header.length - 1; w >= 0; w--) {
+            if (header[w] != 0) {
+                return w * 64 + 64 - Long.numberOfLeadingZeros(header[w]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the first empty slot, or numSlots if there is none.
+     */
+    private int nextFreeSlot() {
+        for (int w = 0; w < header.length; w++) {
+            if (header[w] != -1L) {
+                return Math.min(w * 64 + Long.numberOfTrailingZeros(~header[w]), numSlots);
             }
         }
+        return numSlots;
     }
 
     /**
@@ -314,15 +652,14 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Returns the number of empty slots on this page.
+     * Returns the number of empty slots on this page. For slotted pages,
+     * this is the number of the smallest possible tuples that still fit.
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int result = numSlots;
-        for (int i = 0; i < numSlots; i++) {
-            if (isSlotUsed(i)) {
-                result--;
-            }
+        int result = numSlots - countBits(header);
+        if (slotted) {
+            return emptySlots(td, numSlots, numSlots - result, directoryLength(), tupleBytes);
         }
         return result;
     }
@@ -332,7 +669,7 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        return (header[i / 8] & (1 << (i % 8))) != 0;
+        return (header[i >>> 6] & (1L << i)) != 0;
     }
 
     /**
@@ -341,10 +678,11 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
         // not necessary for lab1
+        modified = true;
         if (value) {
-            header[i / 8] |= 1 << (i % 8);
+            header[i >>> 6] |= 1L << i;
         } else {
-            header[i / 8] &= ((1 << 8) - 1) ^ (1 << (i % 8));
+            header[i >>> 6] &= ~(1L << i);
         }
     }
 
@@ -354,13 +692,55 @@ public class HeapPage implements Page {
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        ArrayList<Tuple> tmp = new ArrayList<>();
-        for (int i = 0; i < numSlots; i++) {
-            if (isSlotUsed(i)) {
-                tmp.add(tuples[i]);
+        // iterate over the slots used right now, decoding them as we go
+        final long[] used = header.clone();
+        return new Iterator<Tuple>() {
+            private int next = advance(0);
+
+            /** Returns the first used slot at or after i, skipping empty words. */
+            private int advance(int i) {
+                int w = i >>> 6;
+                if (w >= used.length) {
+                    return numSlots;
+                }
+                long word = used[w] & (-1L << i);
+                while (word == 0) {
+                    if (++w == used.length) {
+                        return numSlots;
+                    }
+                    word = used[w];
+                }
+                return w * 64 + Long.numberOfTrailingZeros(word);
             }
-        }
-        return tmp.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (next >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = tuple(next);
+                next = advance(next + 1);
+                return t;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the tuple in the given slot, or null if the slot is empty.
+     * Only this tuple is decoded.
+     */
+    public Tuple getTuple(int i) {
+        return isSlotUsed(i) ? tuple(i) : null;
     }
 
 }
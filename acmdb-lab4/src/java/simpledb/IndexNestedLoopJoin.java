@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The IndexNestedLoopJoin operator joins each tuple of the left relation
+ * with the tuples of the right relation that a B+ tree index search for its
+ * join field finds, instead of scanning or hashing the right relation.
+ * <p>
+ * The right child must be a scan of a {@link BTreeFile} whose key is the
+ * join field (see {@link #canProbe}); it is only used for its schema and
+ * file, not iterated. The internal pages of the B+ tree are cached across
+ * probes in a {@link BTreeProbeCache}, so each probe only reads leaves.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate predicate;
+    private DbIterator child1, child2;
+    /** The merged schema, computed once rather than for every tuple. */
+    private transient TupleDesc td;
+
+    private transient BTreeProbeCache cache;
+    private transient Tuple current1;
+    private transient DbFileIterator probe;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on.
+     *
+     * @param p      The predicate to use to join the children; one of EQUALS,
+     *               GREATER_THAN, GREATER_THAN_OR_EQ, LESS_THAN and
+     *               LESS_THAN_OR_EQ
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Scan of the right(inner) relation, which must be a B+
+     *               tree keyed on its join field
+     * @throws IllegalArgumentException if the right relation cannot be probed
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        if (!canProbe(child2, p.getField2(), p.getOperator())) {
+            throw new IllegalArgumentException("no B+ tree index to probe on field " + p.getField2());
+        }
+        this.predicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+    }
+
+    /**
+     * Returns whether a join on the given comparison can probe an iterator
+     * as its right relation: the iterator must be a SeqScan of a B+ tree
+     * whose key is the given field.
+     */
+    public static boolean canProbe(DbIterator it, int field, Predicate.Op op) {
+        if (op == Predicate.Op.NOT_EQUALS || op == Predicate.Op.LIKE || !(it instanceof SeqScan)) {
+            return false;
+        }
+        DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) it).getTableId());
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+    }
+
+    /**
+     * Returns the comparison with its sides swapped: a OP b holds exactly
+     * when b swap(OP) a does.
+     */
+    private static Predicate.Op swap(Predicate.Op op) {
+        switch (op) {
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return predicate;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(predicate.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(predicate.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        if (td == null) {
+            td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        }
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        SeqScan scan = (SeqScan) child2;
+        cache = new BTreeProbeCache(
+                (BTreeFile) Database.getCatalog().getDatabaseFile(scan.getTableId()),
+                scan.getTransactionId());
+        child1.open();
+        current1 = null;
+        super.open();
+    }
+
+    private void closeProbe() {
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+    }
+
+    public void close() {
+        super.close();
+        closeProbe();
+        cache = null;
+        current1 = null;
+        child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        closeProbe();
+        current1 = null;
+        child1.rewind();
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. The matches of each left tuple are returned in the order
+     * of the right join field.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (probe != null) {
+                if (probe.hasNext()) {
+                    return Tuple.merge(getTupleDesc(), current1, probe.next());
+                }
+                closeProbe();
+            }
+            if (!child1.hasNext()) {
+                return null;
+            }
+            current1 = child1.next();
+            IndexPredicate ipred = new IndexPredicate(swap(predicate.getOperator()),
+                    current1.getField(predicate.getField1()));
+            probe = cache.getFile().indexIterator(cache, ipred);
+            probe.open();
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        assert children.length == 2;
+        this.child1 = children[0];
+        this.child2 = children[1];
+        this.td = null;
+    }
+}
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+
 import javax.xml.crypto.Data;
 
 /**
@@ -72,6 +74,11 @@ public class Insert extends Operator {
      * that insert DOES NOT need check to see if a particular tuple is a
      * duplicate before inserting it.
      *
+     * <p>
+     * Into a HeapFile whose pages are all full but the last, tuples go
+     * through the BufferPool only until the last page is full as well; the
+     * rest is appended with {@link HeapFile#bulkInsert}.
+     *
      * @return A 1-field tuple containing the number of inserted records, or
      *         null if called more than once.
      * @see Database#getBufferPool
@@ -84,8 +91,20 @@ public class Insert extends Operator {
         }
         fetched = true;
         int count = 0;
-        for (; child.hasNext(); count++) {
-            Database.getBufferPool().insertTuple(transactionId, tableId, child.next());
+        try {
+            DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+            HeapFile appendTo = file instanceof HeapFile && ((HeapFile) file).isAppendOnly()
+                    ? (HeapFile) file : null;
+            while (child.hasNext()) {
+                if (appendTo != null && !appendTo.hasFreeSpace()) {
+                    count += appendTo.bulkInsert(transactionId, child);
+                    break;
+                }
+                Database.getBufferPool().insertTuple(transactionId, tableId, child.next());
+                count++;
+            }
+        } catch (IOException e) {
+            throw new DbException(e.getMessage());
         }
         Tuple tuple = new Tuple(tupleDesc);
         tuple.setField(0, new IntField(count));
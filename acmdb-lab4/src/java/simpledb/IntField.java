@@ -49,29 +49,34 @@ public class IntField implements Field {
      * @see Field#compare
      */
     public boolean compare(Predicate.Op op, Field val) {
+        return compare(op, value, ((IntField) val).value);
+    }
 
-        IntField iVal = (IntField) val;
-
+    /**
+     * Compare two int values the way IntField.compare compares the fields
+     * holding them, without having to box them.
+     */
+    static boolean compare(Predicate.Op op, int value, int other) {
         switch (op) {
             case EQUALS:
-                return value == iVal.value;
+                return value == other;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return value != other;
 
             case GREATER_THAN:
-                return value > iVal.value;
+                return value > other;
 
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return value >= other;
 
             case LESS_THAN:
-                return value < iVal.value;
+                return value < other;
 
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return value <= other;
 
             case LIKE:
-                return value == iVal.value;
+                return value == other;
         }
 
         return false;
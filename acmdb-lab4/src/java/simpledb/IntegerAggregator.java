@@ -1,6 +1,6 @@
 package simpledb;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,7 +18,6 @@ public class IntegerAggregator implements Aggregator {
     private final TupleDesc tupleDesc;
 
     private final Map<Field, Integer> groupCount, groupMin, groupMax, groupSum;
-    private final Map<Field, Tuple> groupTuple;
 
     /**
      * Aggregate constructor
@@ -45,7 +44,6 @@ public class IntegerAggregator implements Aggregator {
         } else {
             this.tupleDesc = new TupleDesc(new Type[]{gbfieldtype, Type.INT_TYPE});
         }
-        this.groupTuple = new HashMap<>();
         switch (what) {
             case COUNT:
                 this.groupCount = new HashMap<>();
@@ -85,15 +83,6 @@ public class IntegerAggregator implements Aggregator {
         }
     }
 
-    private Integer initGroup(Map<Field, Integer> map, Field key, Integer value) {
-        Integer current = map.getOrDefault(key, null);
-        if (current == null) {
-            map.put(key, value);
-            return value;
-        }
-        return current;
-    }
-
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the
      * constructor
@@ -103,41 +92,59 @@ public class IntegerAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tuple) {
         // some code goes here
-        assert tuple.getField(field) instanceof IntField;
         Field key = groupByField == NO_GROUPING ? null : tuple.getField(groupByField);
-        int value = ((IntField) tuple.getField(field)).getValue();
-        int aggregrateValue = 0;
+        merge(key, tuple.getInt(field));
+    }
+
+    @Override
+    public void mergeBatchIntoGroup(TupleBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            int row = batch.row(i);
+            Field key = groupByField == NO_GROUPING ? null : batch.getField(groupByField, row);
+            merge(key, batch.getInt(field, row));
+        }
+    }
+
+    /**
+     * Fold a value into the state of its group. The result tuples are only
+     * built once, by {@link #iterator()}.
+     */
+    private void merge(Field key, int value) {
         switch (op) {
             case AVG:
-                groupCount.put(key, initGroup(groupCount, key, 0) + 1);
-                groupSum.put(key, initGroup(groupSum, key, 0) + value);
-                aggregrateValue = groupSum.get(key) / groupCount.get(key);
+                groupCount.merge(key, 1, Integer::sum);
+                groupSum.merge(key, value, Integer::sum);
                 break;
             case COUNT:
-                groupCount.put(key, initGroup(groupCount, key, 0) + 1);
-                aggregrateValue = groupCount.get(key);
+                groupCount.merge(key, 1, Integer::sum);
                 break;
             case SUM:
-                groupSum.put(key, initGroup(groupSum, key, 0) + value);
-                aggregrateValue = groupSum.get(key);
+                groupSum.merge(key, value, Integer::sum);
                 break;
             case MIN:
-                groupMin.put(key, Math.min(value, initGroup(groupMin, key, Integer.MAX_VALUE)));
-                aggregrateValue = groupMin.get(key);
+                groupMin.merge(key, value, Math::min);
                 break;
             case MAX:
-                groupMax.put(key, Math.max(value, initGroup(groupMax, key, Integer.MIN_VALUE)));
-                aggregrateValue = groupMax.get(key);
+                groupMax.merge(key, value, Math::max);
                 break;
         }
-        Tuple newTuple = new Tuple(tupleDesc);
-        if (key != null) {
-            newTuple.setField(0, key);
-            newTuple.setField(1, new IntField(aggregrateValue));
-        } else {
-            newTuple.setField(0, new IntField(aggregrateValue));
+    }
+
+    private int aggregateValue(Field key) {
+        switch (op) {
+            case AVG:
+                return groupSum.get(key) / groupCount.get(key);
+            case COUNT:
+                return groupCount.get(key);
+            case SUM:
+                return groupSum.get(key);
+            case MIN:
+                return groupMin.get(key);
+            case MAX:
+                return groupMax.get(key);
+            default:
+                return 0;
         }
-        groupTuple.put(key, newTuple);
     }
 
     /**
@@ -150,6 +157,21 @@ public class IntegerAggregator implements Aggregator {
      */
     public DbIterator iterator() {
         // some code goes here
-        return new TupleIterator(tupleDesc, groupTuple.values());
+        Map<Field, Integer> groups = groupCount != null ? groupCount
+                : groupSum != null ? groupSum
+                : groupMin != null ? groupMin
+                : groupMax != null ? groupMax : new HashMap<>();
+        List<Tuple> tuples = new ArrayList<>(groups.size());
+        for (Field key : groups.keySet()) {
+            Tuple tuple = new Tuple(tupleDesc);
+            if (key != null) {
+                tuple.setField(0, key);
+                tuple.setInt(1, aggregateValue(key));
+            } else {
+                tuple.setInt(0, aggregateValue(key));
+            }
+            tuples.add(tuple);
+        }
+        return new TupleIterator(tupleDesc, tuples);
     }
 }
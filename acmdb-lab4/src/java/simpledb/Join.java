@@ -4,13 +4,36 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * It is a block nested-loop join. If the inner (right) relation fits into
+ * the memory budget, it is read once and kept in memory. Otherwise the
+ * outer relation is read in blocks that fit the budget, and the inner
+ * relation is scanned once per block rather than once per outer tuple.
  */
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * The default memory budget, in pages, for the cached inner relation
+     * and, when it does not fit, for each block of the outer relation.
+     */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+
     private final JoinPredicate predicate;
     private DbIterator child1, child2;
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
+    /** The inner relation, if it fits into memory; null otherwise. */
+    private transient List<Tuple> inner;
+    /** The current outer tuple and the position in the cached inner. */
     private transient Tuple current1;
+    private transient int innerPosition;
+    /** The current block of outer tuples and the inner tuple being joined. */
+    private transient List<Tuple> block;
+    private transient Tuple current2;
+    private transient int blockPosition;
+    /** The merged schema, computed once rather than for every tuple. */
+    private transient TupleDesc td;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -30,6 +53,31 @@ public class Join extends Operator {
         this.child2 = child2;
     }
 
+    /**
+     * Set the number of pages of memory this join may use; takes effect
+     * the next time it is opened.
+     */
+    public void setMemoryPages(int pages) {
+        this.memoryPages = pages;
+    }
+
+    /**
+     * Returns the number of tuples of the given schema that fit into the
+     * memory budget.
+     */
+    private int tuplesInMemory(TupleDesc td) {
+        return tuplesInMemory(memoryPages, td);
+    }
+
+    /**
+     * Returns the number of tuples of the given schema that fit into the
+     * given number of pages, and at least one.
+     */
+    static int tuplesInMemory(int pages, TupleDesc td) {
+        return Math.max(1, (int) Math.min(Integer.MAX_VALUE,
+                (long) pages * BufferPool.getPageSize() / td.getSize()));
+    }
+
     public JoinPredicate getJoinPredicate() {
         // some code goes here
         return predicate;
@@ -61,7 +109,10 @@ public class Join extends Operator {
      */
     public TupleDesc getTupleDesc() {
         // some code goes here
-        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        if (td == null) {
+            td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        }
+        return td;
     }
 
     public void open() throws DbException, NoSuchElementException,
@@ -69,21 +120,53 @@ public class Join extends Operator {
         // some code goes here
         child1.open();
         child2.open();
-        current1 = null;
+        cacheInner();
+        resetState();
         super.open();
     }
 
+    /**
+     * Read the inner relation into memory if it fits the budget, and
+     * rewind it otherwise.
+     */
+    private void cacheInner() throws DbException, TransactionAbortedException {
+        int limit = tuplesInMemory(child2.getTupleDesc());
+        List<Tuple> tuples = new ArrayList<>();
+        while (child2.hasNext()) {
+            if (tuples.size() == limit) {
+                inner = null;
+                child2.rewind();
+                return;
+            }
+            tuples.add(child2.next());
+        }
+        inner = tuples;
+    }
+
+    private void resetState() {
+        current1 = null;
+        innerPosition = 0;
+        block = null;
+        current2 = null;
+        blockPosition = 0;
+    }
+
     public void close() {
         // some code goes here
         super.close();
         child1.close();
         child2.close();
+        inner = null;
+        resetState();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
         child1.rewind();
-        child2.rewind();
+        if (inner == null) {
+            child2.rewind();
+        }
+        resetState();
     }
 
     /**
@@ -106,22 +189,65 @@ public class Join extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
+        return inner != null ? fetchNextCached() : fetchNextBlock();
+    }
+
+    /**
+     * Join each outer tuple with the inner relation kept in memory.
+     */
+    private Tuple fetchNextCached() throws TransactionAbortedException, DbException {
         while (true) {
             if (current1 == null) {
                 if (!child1.hasNext()) {
                     return null;
                 }
                 current1 = child1.next();
-                child2.rewind();
+                innerPosition = 0;
+            }
+            while (innerPosition < inner.size()) {
+                Tuple t = inner.get(innerPosition++);
+                if (predicate.filter(current1, t)) {
+                    return Tuple.merge(getTupleDesc(), current1, t);
+                }
+            }
+            current1 = null;
+        }
+    }
+
+    /**
+     * Join blocks of outer tuples with one scan of the inner relation each.
+     */
+    private Tuple fetchNextBlock() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (block == null) {
+                int limit = tuplesInMemory(child1.getTupleDesc());
+                block = new ArrayList<>();
+                while (block.size() < limit && child1.hasNext()) {
+                    block.add(child1.next());
+                }
+                if (block.isEmpty()) {
+                    block = null;
+                    return null;
+                }
+                current2 = null;
+            }
+            if (current2 == null) {
+                if (!child2.hasNext()) {
+                    // done with this block
+                    block = null;
+                    child2.rewind();
+                    continue;
+                }
+                current2 = child2.next();
+                blockPosition = 0;
             }
-            if (child2.hasNext()) {
-                Tuple current2 = child2.next();
-                if (predicate.filter(current1, current2)) {
-                    return Tuple.merge(current1, current2);
+            while (blockPosition < block.size()) {
+                Tuple t = block.get(blockPosition++);
+                if (predicate.filter(t, current2)) {
+                    return Tuple.merge(getTupleDesc(), t, current2);
                 }
-            } else {
-                current1 = null;
             }
+            current2 = null;
         }
     }
 
@@ -137,6 +263,8 @@ public class Join extends Operator {
         assert children.length == 2;
         this.child1 = children[0];
         this.child2 = children[1];
+        this.td = null;
+        this.inner = null;
     }
 
 }
@@ -68,12 +68,86 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        boolean subplan = lj instanceof LogicalSubplanJoinNode;
+        switch (chooseJoin(lj.p, !subplan && isFiltered(plan1, lj.t1Alias),
+                !subplan && IndexNestedLoopJoin.canProbe(plan2, t2id, lj.p),
+                !subplan && SortMergeJoin.isSorted(plan1, t1id) && SortMergeJoin.isSorted(plan2, t2id))) {
+            case INDEX:
+                j = new IndexNestedLoopJoin(p, plan1, plan2);
+                break;
+            case SORT_MERGE:
+                j = new SortMergeJoin(p, plan1, plan2);
+                break;
+            case HASH:
+                j = new HashEquiJoin(p, plan1, plan2);
+                break;
+            default:
+                j = new Join(p, plan1, plan2);
+        }
 
         return j;
 
     }
 
+    /** The join operators {@link #chooseJoin} picks from. */
+    private enum JoinMethod {
+        INDEX, SORT_MERGE, HASH, NESTED_LOOP
+    }
+
+    /**
+     * Choose the join operator for a join. Both instantiateJoin, from the
+     * physical subplans, and estimateJoinCost, from the logical plan, decide
+     * through this method, so that the join that is costed is the one that
+     * is built.
+     * <p>
+     * There are no cardinalities in instantiateJoin, so a filtered outer
+     * table is taken to be selective enough for index probes into the inner
+     * table to beat reading all of it. The sort-merge join only beats the
+     * hash join and the memory-budgeted block nested-loop join when it needs
+     * no sort (see estimateSortMergeJoinCost).
+     *
+     * @param outerFiltered
+     *            Whether the left-hand table is filtered
+     * @param innerIndexed
+     *            Whether the right-hand table is an unfiltered B+ tree keyed
+     *            on the join field
+     * @param sorted
+     *            Whether both sides are ordered on their join fields
+     */
+    private static JoinMethod chooseJoin(Predicate.Op op, boolean outerFiltered,
+            boolean innerIndexed, boolean sorted) {
+        if (outerFiltered && innerIndexed) {
+            return JoinMethod.INDEX;
+        } else if (sorted && SortMergeJoin.supports(op)) {
+            return JoinMethod.SORT_MERGE;
+        } else if (op == Predicate.Op.EQUALS) {
+            return JoinMethod.HASH;
+        } else {
+            return JoinMethod.NESTED_LOOP;
+        }
+    }
+
+    /**
+     * Returns whether a plan filters the scan of the table with the given
+     * alias, the way LogicalPlan.physicalPlan places filters.
+     */
+    private static boolean isFiltered(DbIterator plan, String alias) {
+        if (plan instanceof Filter) {
+            DbIterator child = ((Filter) plan).getChildren()[0];
+            if (child instanceof SeqScan && alias.equals(((SeqScan) child).getAlias())) {
+                return true;
+            }
+        }
+        if (plan instanceof Operator) {
+            for (DbIterator child : ((Operator) plan).getChildren()) {
+                if (isFiltered(child, alias)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Estimate the cost of a join.
      * 
@@ -111,8 +185,94 @@ public class JoinOptimizer {
             // HINT: You may need to use the variable "j" if you implemented
             // a join algorithm that's more complicated than a basic
             // nested-loops join.
-            return -1.0;
+            boolean sorted1 = getKeyedBTree(j.t1Alias, j.f1PureName) != null;
+            boolean sorted2 = getKeyedBTree(j.t2Alias, j.f2PureName) != null;
+            BTreeFile index = p.isFiltered(j.t2Alias) ? null : getIndex(j);
+            switch (chooseJoin(j.p, p.isFiltered(j.t1Alias), index != null, sorted1 && sorted2)) {
+                case INDEX:
+                    return estimateIndexJoinCost(j.p, card1, card2, cost1, cost2,
+                            index.numPages());
+                case SORT_MERGE:
+                    return estimateSortMergeJoinCost(card1, card2, cost1, cost2,
+                            sorted1, sorted2);
+                case HASH:
+                    // one scan of each side, and a hash and probe per tuple
+                    return cost1 + cost2 + card1 + card2;
+                default:
+                    return cost1 + card1 * cost2 + (double) card1 * card2;
+            }
+        }
+    }
+
+    /**
+     * Returns the B+ tree of the right-hand table of a join if it is keyed on
+     * the join field, or null.
+     */
+    private BTreeFile getIndex(LogicalJoinNode j) {
+        if (j.p == Predicate.Op.NOT_EQUALS || j.p == Predicate.Op.LIKE) {
+            return null;
+        }
+        return getKeyedBTree(j.t2Alias, j.f2PureName);
+    }
+
+    /**
+     * Returns the table of an alias if it is a B+ tree keyed on the given
+     * field, whose scans are ordered on that field, or null.
+     */
+    private BTreeFile getKeyedBTree(String alias, String field) {
+        Integer tableId = p.getTableId(alias);
+        if (tableId == null) {
+            return null;
+        }
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(f instanceof BTreeFile)) {
+            return null;
+        }
+        TupleDesc td = f.getTupleDesc();
+        int keyField = ((BTreeFile) f).keyField();
+        return field.equals(td.getFieldName(keyField)) ? (BTreeFile) f : null;
+    }
+
+    /**
+     * Estimate the cost of a join with an {@link IndexNestedLoopJoin}: a scan
+     * of the left-hand side, and for each of its tuples a probe that reads
+     * one leaf page of the right-hand side (the upper levels stay cached)
+     * and the tuples it matches. Equality probes are assumed to match one
+     * tuple, range probes a third of the right-hand side.
+     *
+     * @param pages2
+     *            The number of pages of the right-hand side
+     * @return An estimate of the cost of the join, in terms of cost1 and
+     *         cost2
+     */
+    public static double estimateIndexJoinCost(Predicate.Op op, int card1,
+            int card2, double cost1, double cost2, int pages2) {
+        double matches = op == Predicate.Op.EQUALS ? 1 : card2 / 3.0;
+        return cost1 + card1 * (cost2 / Math.max(1, pages2) + matches);
+    }
+
+    /**
+     * Estimate the cost of a join with a {@link SortMergeJoin}: a scan of
+     * each input, a sort of each input that is not already ordered on its
+     * join field, and a comparison per input tuple.
+     *
+     * @param sorted1
+     *            Whether the left-hand side is ordered on its join field
+     * @param sorted2
+     *            Whether the right-hand side is ordered on its join field
+     * @return An estimate of the cost of the join, in terms of cost1 and
+     *         cost2, not counting the output
+     */
+    public static double estimateSortMergeJoinCost(int card1, int card2,
+            double cost1, double cost2, boolean sorted1, boolean sorted2) {
+        double cost = cost1 + cost2 + card1 + card2;
+        if (!sorted1 && card1 > 1) {
+            cost += card1 * (Math.log(card1) / Math.log(2));
+        }
+        if (!sorted2 && card2 > 1) {
+            cost += card2 * (Math.log(card2) / Math.log(2));
         }
+        return cost;
     }
 
     /**
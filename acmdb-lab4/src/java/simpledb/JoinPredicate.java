@@ -44,6 +44,9 @@ public class JoinPredicate implements Serializable {
      */
     public boolean filter(Tuple tA, Tuple tB) {
         // some code goes here
+        if (tA.getTupleDesc().getFieldType(field1) == Type.INT_TYPE) {
+            return IntField.compare(op, tA.getInt(field1), tB.getInt(field2));
+        }
         return tA.getField(field1).compare(op, tB.getField(field2));
     }
     
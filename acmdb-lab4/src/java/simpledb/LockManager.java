@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * LockManager keeps track of the page-level locks held by transactions.
+ * <p>
+ * Shared locks are granted for {@link Permissions#READ_ONLY} requests and
+ * exclusive locks for {@link Permissions#READ_WRITE} requests. A transaction
+ * that is the only holder of a shared lock may upgrade it to an exclusive one.
+ * <p>
+ * Whenever a request has to wait, the manager records which transactions it
+ * waits for. If the new edges close a cycle in that wait-for graph, the
+ * requesting transaction is chosen as the victim and a
+ * {@link DeadlockException} is thrown instead of blocking forever.
+ *
+ * @Threadsafe
+ */
+class LockManager {
+    private final Map<PageId, Set<TransactionId>> sharedHolders;
+    private final Map<PageId, TransactionId> exclusiveHolders;
+    private final Map<TransactionId, Set<PageId>> lockedPages;
+    private final Map<TransactionId, Set<TransactionId>> waitsFor;
+
+    LockManager() {
+        this.sharedHolders = new HashMap<>();
+        this.exclusiveHolders = new HashMap<>();
+        this.lockedPages = new HashMap<>();
+        this.waitsFor = new HashMap<>();
+    }
+
+    /**
+     * Acquire a lock on the specified page, blocking until it can be granted.
+     *
+     * @param tid  the transaction requesting the lock
+     * @param pid  the page to lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @throws DeadlockException if waiting for the lock would cause a deadlock
+     */
+    public synchronized void acquireLock(TransactionId tid, PageId pid, Permissions perm)
+            throws DeadlockException {
+        boolean exclusive = perm == Permissions.READ_WRITE;
+        while (true) {
+            Set<TransactionId> blockers = getBlockers(tid, pid, exclusive);
+            if (blockers.isEmpty()) {
+                break;
+            }
+            waitsFor.put(tid, blockers);
+            if (hasCycle(tid)) {
+                waitsFor.remove(tid);
+                notifyAll();
+                throw new DeadlockException();
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                waitsFor.remove(tid);
+                Thread.currentThread().interrupt();
+                throw new DeadlockException();
+            }
+        }
+        waitsFor.remove(tid);
+        if (exclusive) {
+            exclusiveHolders.put(pid, tid);
+        } else if (!tid.equals(exclusiveHolders.get(pid))) {
+            sharedHolders.computeIfAbsent(pid, k -> new HashSet<>()).add(tid);
+        }
+        lockedPages.computeIfAbsent(tid, k -> new HashSet<>()).add(pid);
+    }
+
+    /**
+     * Release any lock the specified transaction holds on the specified page.
+     */
+    public synchronized void releaseLock(TransactionId tid, PageId pid) {
+        Set<TransactionId> holders = sharedHolders.get(pid);
+        if (holders != null) {
+            holders.remove(tid);
+            if (holders.isEmpty()) {
+                sharedHolders.remove(pid);
+            }
+        }
+        if (tid.equals(exclusiveHolders.get(pid))) {
+            exclusiveHolders.remove(pid);
+        }
+        Set<PageId> pages = lockedPages.get(tid);
+        if (pages != null) {
+            pages.remove(pid);
+            if (pages.isEmpty()) {
+                lockedPages.remove(tid);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Release all locks held by the specified transaction.
+     */
+    public synchronized void releaseAllLocks(TransactionId tid) {
+        Set<PageId> pages = lockedPages.remove(tid);
+        if (pages != null) {
+            for (PageId pid : pages) {
+                Set<TransactionId> holders = sharedHolders.get(pid);
+                if (holders != null) {
+                    holders.remove(tid);
+                    if (holders.isEmpty()) {
+                        sharedHolders.remove(pid);
+                    }
+                }
+                if (tid.equals(exclusiveHolders.get(pid))) {
+                    exclusiveHolders.remove(pid);
+                }
+            }
+        }
+        waitsFor.remove(tid);
+        notifyAll();
+    }
+
+    /**
+     * Return true if the specified transaction holds a lock on the specified page.
+     */
+    public synchronized boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> pages = lockedPages.get(tid);
+        return pages != null && pages.contains(pid);
+    }
+
+    /**
+     * Return the pages the specified transaction holds a lock on.
+     */
+    public synchronized Set<PageId> getLockedPages(TransactionId tid) {
+        Set<PageId> pages = lockedPages.get(tid);
+        return pages == null ? Collections.emptySet() : new HashSet<>(pages);
+    }
+
+    /**
+     * Return the transactions that prevent tid from being granted the lock.
+     */
+    private Set<TransactionId> getBlockers(TransactionId tid, PageId pid, boolean exclusive) {
+        Set<TransactionId> blockers = new HashSet<>();
+        TransactionId writer = exclusiveHolders.get(pid);
+        if (writer != null && !writer.equals(tid)) {
+            blockers.add(writer);
+        }
+        if (exclusive) {
+            Set<TransactionId> readers = sharedHolders.get(pid);
+            if (readers != null) {
+                for (TransactionId reader : readers) {
+                    if (!reader.equals(tid)) {
+                        blockers.add(reader);
+                    }
+                }
+            }
+        }
+        return blockers;
+    }
+
+    /**
+     * Depth-first search of the wait-for graph for a cycle passing through start.
+     */
+    private boolean hasCycle(TransactionId start) {
+        Set<TransactionId> visited = new HashSet<>();
+        Deque<TransactionId> stack = new ArrayDeque<>(waitsFor.get(start));
+        while (!stack.isEmpty()) {
+            TransactionId current = stack.pop();
+            if (current.equals(start)) {
+                return true;
+            }
+            if (visited.add(current)) {
+                Set<TransactionId> next = waitsFor.get(current);
+                if (next != null) {
+                    stack.addAll(next);
+                }
+            }
+        }
+        return false;
+    }
+}
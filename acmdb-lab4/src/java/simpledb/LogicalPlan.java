@@ -81,6 +81,19 @@ public class LogicalPlan {
         return this.tableMap;
     }
 
+    /** Return whether the plan filters the table with the given alias.
+        @param alias the table alias to look for
+        @return true if a filter added via {@link #addFilter} applies to alias
+     */
+    public boolean isFiltered(String alias) {
+        for (LogicalFilterNode lf : filters) {
+            if (lf.tableAlias.equals(alias)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Add a new filter to the logical plan
      *   @param field The name of the over which the filter applies;
      *   this can be a fully qualified field (tablename.field or
@@ -0,0 +1,127 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * LruKEvictionPolicy is a constant-time approximation of LRU-K.
+ * <p>
+ * Pages that have been referenced fewer than K times have an infinite
+ * backward K-distance, so they live in a FIFO "cold" queue and are evicted
+ * first. Once a page reaches its K-th reference it is promoted to a "hot"
+ * queue kept in LRU order, which is only used when no cold page can be
+ * evicted. Reference counts of recently evicted pages are remembered for a
+ * while, so a page that is reread soon after eviction is not treated as
+ * brand new.
+ * <p>
+ * With K = 2 a sequential scan only ever fills the cold queue and cannot
+ * push out hot pages such as B+ tree internal nodes.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+    private final int k;
+    private final Map<PageId, Integer> references;
+    private final LinkedHashSet<PageId> cold;
+    private final LinkedHashSet<PageId> hot;
+    private final LinkedHashMap<PageId, Integer> history;
+
+    /**
+     * Creates an LRU-2 policy.
+     */
+    public LruKEvictionPolicy() {
+        this(2);
+    }
+
+    /**
+     * @param k the number of references after which a page counts as hot
+     */
+    public LruKEvictionPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        this.k = k;
+        this.references = new HashMap<>();
+        this.cold = new LinkedHashSet<>();
+        this.hot = new LinkedHashSet<>();
+        this.history = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void pageAdded(PageId pid) {
+        if (references.containsKey(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        Integer past = history.remove(pid);
+        references.put(pid, past == null ? 0 : past);
+        pageAccessed(pid);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        Integer count = references.get(pid);
+        if (count == null) {
+            return;
+        }
+        count = Math.min(count + 1, k);
+        references.put(pid, count);
+        if (count >= k) {
+            cold.remove(pid);
+            hot.remove(pid);
+            hot.add(pid);
+        } else {
+            cold.add(pid);
+        }
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        references.remove(pid);
+        cold.remove(pid);
+        hot.remove(pid);
+    }
+
+    @Override
+    public PageId evict(java.util.function.Predicate<PageId> evictable) {
+        PageId victim = findVictim(cold, evictable);
+        if (victim == null) {
+            victim = findVictim(hot, evictable);
+        }
+        if (victim != null) {
+            Integer count = references.get(victim);
+            pageRemoved(victim);
+            remember(victim, count);
+        }
+        return victim;
+    }
+
+    @Override
+    public List<PageId> pagesByHeat() {
+        List<PageId> pages = new ArrayList<>(hot);
+        Collections.reverse(pages);
+        List<PageId> coldPages = new ArrayList<>(cold);
+        Collections.reverse(coldPages);
+        pages.addAll(coldPages);
+        return pages;
+    }
+
+    private PageId findVictim(Set<PageId> queue, java.util.function.Predicate<PageId> evictable) {
+        for (PageId pid : queue) {
+            if (evictable.test(pid)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keep the reference count of an evicted page, retaining at most as many
+     * entries as there are resident pages.
+     */
+    private void remember(PageId pid, int count) {
+        history.put(pid, count);
+        Iterator<PageId> it = history.keySet().iterator();
+        while (history.size() > Math.max(references.size(), 1) && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
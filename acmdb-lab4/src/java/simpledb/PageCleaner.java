@@ -0,0 +1,81 @@
+package simpledb;
+
+/**
+ * PageCleaner is a background thread that writes dirty pages of a BufferPool
+ * back to disk ahead of eviction, so that the share of clean frames stays at
+ * or above a target and foreground misses find a page they can evict without
+ * waiting for a write.
+ * <p>
+ * The cleaner wakes up periodically, or earlier when the pool reports that it
+ * ran short of evictable pages, and performs one round of
+ * {@link BufferPool#cleanPages(double)}.
+ *
+ * @see BufferPool#startPageCleaner(long, double)
+ */
+class PageCleaner extends Thread {
+    private final BufferPool bufferPool;
+    private final long intervalMillis;
+    private final double cleanTarget;
+    private boolean wakeUpRequested;
+    private volatile boolean running;
+
+    /**
+     * @param bufferPool     the buffer pool to clean
+     * @param intervalMillis the time between two cleaning rounds
+     * @param cleanTarget    the share of frames, between 0 and 1, that
+     *                       should be clean or free after a round
+     */
+    PageCleaner(BufferPool bufferPool, long intervalMillis, double cleanTarget) {
+        super("PageCleaner");
+        if (intervalMillis <= 0 || cleanTarget < 0 || cleanTarget > 1) {
+            throw new IllegalArgumentException("invalid page cleaner configuration");
+        }
+        this.bufferPool = bufferPool;
+        this.intervalMillis = intervalMillis;
+        this.cleanTarget = cleanTarget;
+        this.running = true;
+        setDaemon(true);
+    }
+
+    /**
+     * Ask for a cleaning round as soon as possible.
+     */
+    synchronized void wakeUp() {
+        wakeUpRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Stop the cleaner and wait for the current round to finish.
+     */
+    void shutdown() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    if (!wakeUpRequested) {
+                        wait(intervalMillis);
+                    }
+                    wakeUpRequested = false;
+                }
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                bufferPool.cleanPages(cleanTarget);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
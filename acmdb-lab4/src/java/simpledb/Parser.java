@@ -365,13 +365,13 @@ public class Parser {
                     IntField f = new IntField(new Integer(zc.getValue()));
                     t.setField(i, f);
                 } else if (zc.getType() == ZConstant.STRING) {
-                    if (td.getFieldType(i) != Type.STRING_TYPE) {
+                    if (!td.getFieldType(i).isString()) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
                                 + " is a string, expected an integer.");
                     }
                     StringField f = new StringField(zc.getValue(),
-                            Type.STRING_LEN);
+                            Type.STRING_LEN, td.getFieldType(i));
                     t.setField(i, f);
                 } else {
                     throw new simpledb.ParsingException(
@@ -582,7 +582,37 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "bufferpool" };
+
+    static final String bufferPoolUsage = "Usage: bufferpool stats; | bufferpool resize <pages>;";
+
+    /**
+     * Run an administrative command that is not SQL, such as
+     * "bufferpool resize 500;".
+     *
+     * @param cmd the command, terminated by a semicolon
+     * @return false if cmd is not an administrative command
+     */
+    protected boolean processAdminCommand(String cmd) throws IOException {
+        String[] words = cmd.substring(0, cmd.length() - 1).trim().split("\\s+");
+        if (!words[0].equalsIgnoreCase("bufferpool")) {
+            return false;
+        }
+        if (words.length == 2 && words[1].equalsIgnoreCase("stats")) {
+            System.out.println(Database.getBufferPool().stats());
+        } else if (words.length == 3 && words[1].equalsIgnoreCase("resize")) {
+            try {
+                Database.resizeBufferPool(Integer.parseInt(words[2]));
+                System.out.println("Buffer pool resized to "
+                        + Database.getBufferPool().getNumPages() + " pages");
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid buffer pool size: " + words[2]);
+            }
+        } else {
+            System.out.println(bufferPoolUsage);
+        }
+        return true;
+    }
 
     public static void main(String argv[]) throws IOException {
 
@@ -600,6 +630,7 @@ public class Parser {
     static final int SLEEP_TIME = 5000;
 
     protected void shutdown() {
+        Database.shutdown();
         System.out.println("Bye");
     }
 
@@ -608,6 +639,8 @@ public class Parser {
     protected void start(String[] argv) throws IOException {
         // first add tables to database
         Database.getCatalog().loadSchema(argv[0]);
+        // preload first: it only fills free frames
+        Database.preloadBufferPool();
         TableStats.computeStatistics();
 
         String queryFile = null;
@@ -684,8 +717,10 @@ public class Parser {
                     }
 
                     long startTime = System.currentTimeMillis();
-                    processNextStatement(new ByteArrayInputStream(
-                            statementBytes));
+                    if (!processAdminCommand(cmd)) {
+                        processNextStatement(new ByteArrayInputStream(
+                                statementBytes));
+                    }
                     long time = System.currentTimeMillis() - startTime;
                     System.out.printf("----------------\n%.2f seconds\n\n",
                             ((double) time / 1000.0));
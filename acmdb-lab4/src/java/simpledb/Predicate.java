@@ -62,6 +62,9 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
+        if (operand instanceof IntField) {
+            return IntField.compare(op, t.getInt(field), ((IntField) operand).getValue());
+        }
         return t.getField(field).compare(op, operand);
     }
 
@@ -0,0 +1,391 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * ReadAhead detects transactions that read the pages of a table in order and
+ * reads the following pages into the BufferPool before they are requested,
+ * so that a scan overlaps its disk reads with its own work instead of
+ * waiting for every page in turn.
+ * <p>
+ * Heap files are followed by page number: once a transaction has requested
+ * consecutive pages of a table, the pages after the last one requested are
+ * read ahead. B+ tree scans report every leaf they move to instead, and the
+ * chain of right siblings is followed from there. The window starts small
+ * and doubles while the scan keeps going, up to a limit that depends on the
+ * size of the pool.
+ * <p>
+ * Pages are read by a small pool of daemon threads. A page is registered as
+ * pending with its shard before it is read; a transaction that misses on it
+ * waits for that read instead of issuing its own. The buffer pool reads the
+ * pages transactions miss on behind the same kind of pending read.
+ *
+ * @see BufferPool#readAheadLeaves(TransactionId, BTreeLeafPage)
+ */
+class ReadAhead {
+    /**
+     * Number of pages read ahead the first time a scan is detected.
+     */
+    static final int MIN_WINDOW = 4;
+    /**
+     * Upper bound on the number of pages read ahead of a scan.
+     */
+    static final int MAX_WINDOW = 32;
+    private static final int READER_THREADS = 2;
+    /**
+     * Number of pages a preload task reads before it lets other read-ahead
+     * tasks run.
+     */
+    private static final int PRELOAD_BATCH = 64;
+
+    /**
+     * A page that is being read ahead into the buffer pool.
+     */
+    static final class PendingRead {
+        final PageId pid;
+        final ScanRing ring;
+        // whether other pages may be evicted to make room for this one
+        final boolean mayEvict;
+        private final CountDownLatch done;
+        // set if the page is discarded while it is read, since the read may
+        // then return an outdated version
+        volatile boolean stale;
+
+        PendingRead(PageId pid, ScanRing ring, boolean mayEvict) {
+            this.pid = pid;
+            this.ring = ring;
+            this.mayEvict = mayEvict;
+            this.done = new CountDownLatch(1);
+        }
+
+        void finish() {
+            done.countDown();
+        }
+
+        /**
+         * Wait until the page has been added to the buffer pool or dropped.
+         */
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The position of a transaction in a sequential scan of a table.
+     */
+    private static final class Stream {
+        PageId last;
+        PageId next;
+        int runLength;
+        int window;
+        // pages already read ahead beyond last
+        int ahead;
+    }
+
+    private abstract static class ReadTask implements Runnable {
+        /**
+         * Called instead of run() if the task never gets to run.
+         */
+        void cancel() {
+        }
+    }
+
+    private final BufferPool bufferPool;
+    private final ConcurrentHashMap<TransactionId, Map<Integer, Stream>> streams;
+    private ExecutorService readers;
+    private boolean shutdown;
+
+    /**
+     * @param bufferPool the buffer pool to read pages into
+     */
+    ReadAhead(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        this.streams = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Return the maximum number of pages read ahead of a scan; a scan must
+     * not push more than a quarter of the pool out. Read-ahead is disabled
+     * if this is below MIN_WINDOW.
+     */
+    private int maxWindow() {
+        return Math.min(bufferPool.getNumPages() / 4, MAX_WINDOW);
+    }
+
+    private boolean enabled() {
+        return maxWindow() >= MIN_WINDOW;
+    }
+
+    private Stream stream(TransactionId tid, int tableId) {
+        return streams.computeIfAbsent(tid, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(tableId, k -> new Stream());
+    }
+
+    /**
+     * Move a stream to the page current, which is followed by next, and
+     * decide whether more pages should be read ahead. The caller must hold
+     * the monitor of the stream.
+     *
+     * @return the number of pages after current that have already been read
+     * ahead, or -1 if nothing should be read ahead
+     */
+    private int advance(Stream s, PageId current, PageId next) {
+        if (current.equals(s.last)) {
+            return -1;
+        }
+        if (current.equals(s.next)) {
+            s.runLength++;
+            s.ahead = Math.max(s.ahead - 1, 0);
+        } else {
+            s.runLength = 1;
+            s.window = 0;
+            s.ahead = 0;
+        }
+        s.last = current;
+        s.next = next;
+        // refill once the scan has consumed half of the window
+        if (next == null || s.runLength < 2 || s.ahead > s.window / 2) {
+            return -1;
+        }
+        int from = s.ahead;
+        s.window = s.window == 0 ? MIN_WINDOW : Math.min(s.window * 2, maxWindow());
+        s.ahead = s.window;
+        return from;
+    }
+
+    /**
+     * Called whenever a transaction requests a page through the buffer pool.
+     *
+     * @param ring the ring of the scan requesting the page, if any; pages
+     *             read ahead for the scan go into the same ring
+     */
+    void pageRequested(TransactionId tid, PageId pid, ScanRing ring) {
+        if (!enabled() || tid == null || !(pid instanceof HeapPageId)) {
+            return;
+        }
+        int tableId = pid.getTableId();
+        int pgNo = pid.pageNumber();
+        int from;
+        int window;
+        Stream s = stream(tid, tableId);
+        synchronized (s) {
+            from = advance(s, pid, new HeapPageId(tableId, pgNo + 1));
+            window = s.window;
+        }
+        if (from < 0) {
+            return;
+        }
+        DbFile file;
+        try {
+            file = Database.getCatalog().getDatabaseFile(tableId);
+        } catch (RuntimeException e) {
+            return;
+        }
+        if (!(file instanceof HeapFile)) {
+            return;
+        }
+        int last = Math.min(pgNo + window, ((HeapFile) file).numPages() - 1);
+        // register the pages right away, so that a miss on one of them waits
+        // for the read-ahead even if the task has not started yet
+        List<PendingRead> reads = new ArrayList<>();
+        for (int i = pgNo + 1 + from; i <= last; i++) {
+            PendingRead read = bufferPool.beginPendingRead(new HeapPageId(tableId, i), ring, true);
+            if (read != null) {
+                reads.add(read);
+            }
+        }
+        if (!reads.isEmpty()) {
+            submit(new ReadTask() {
+                @Override
+                public void run() {
+                    readPages(file, reads);
+                }
+
+                @Override
+                void cancel() {
+                    for (PendingRead read : reads) {
+                        bufferPool.finishPendingRead(read, null);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Called when a B+ tree scan that runs to the last leaf moves to a new
+     * leaf page.
+     *
+     * @param ring the ring of the scan, if any; leaves read ahead for the
+     *             scan go into the same ring
+     */
+    void leafScanned(TransactionId tid, BTreeLeafPage leaf, ScanRing ring) {
+        if (!enabled() || tid == null) {
+            return;
+        }
+        BTreePageId pid = leaf.getId();
+        BTreePageId next = leaf.getRightSiblingId();
+        int window;
+        Stream s = stream(tid, pid.getTableId());
+        synchronized (s) {
+            if (advance(s, pid, next) < 0) {
+                return;
+            }
+            window = s.window;
+        }
+        submit(new ReadTask() {
+            @Override
+            public void run() {
+                readLeaves(next, window, ring);
+            }
+        });
+    }
+
+    /**
+     * Read the given pages into free frames of the buffer pool in the
+     * background, in file order. Preloading pauses while transactions wait
+     * for pages they missed on, and stops once the pool is full.
+     */
+    void preload(List<PageId> pages) {
+        List<PageId> sorted = new ArrayList<>(pages);
+        sorted.sort(Comparator.comparingInt(PageId::getTableId).thenComparingInt(PageId::pageNumber));
+        for (int i = 0; i < sorted.size(); i += PRELOAD_BATCH) {
+            List<PageId> batch = sorted.subList(i, Math.min(i + PRELOAD_BATCH, sorted.size()));
+            submit(new ReadTask() {
+                @Override
+                public void run() {
+                    preloadPages(batch);
+                }
+            });
+        }
+    }
+
+    private void preloadPages(List<PageId> pages) {
+        for (PageId pid : pages) {
+            if (!bufferPool.hasFreeFrames()) {
+                return;
+            }
+            if (!bufferPool.awaitForegroundReads()) {
+                return;
+            }
+            PendingRead read = bufferPool.beginPendingRead(pid, null, false);
+            if (read == null) {
+                continue;
+            }
+            Page page = null;
+            try {
+                page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            } catch (RuntimeException e) {
+                // the table or page no longer exists
+            } finally {
+                bufferPool.finishPendingRead(read, page);
+            }
+        }
+    }
+
+    /**
+     * Forget the scans of a transaction that has completed.
+     */
+    void transactionComplete(TransactionId tid) {
+        streams.remove(tid);
+    }
+
+    private synchronized void submit(ReadTask task) {
+        if (shutdown) {
+            task.cancel();
+            return;
+        }
+        if (readers == null) {
+            readers = Executors.newFixedThreadPool(READER_THREADS, r -> {
+                Thread thread = new Thread(r, "ReadAhead");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try {
+            readers.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Stop the reader threads; pages that are still pending are dropped.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        if (readers != null) {
+            for (Runnable task : readers.shutdownNow()) {
+                ((ReadTask) task).cancel();
+            }
+            readers = null;
+        }
+    }
+
+    /**
+     * Read registered pages of a heap file in file order, so that the disk
+     * sees one sequential run.
+     */
+    private void readPages(DbFile file, List<PendingRead> reads) {
+        int i = 0;
+        try {
+            for (; i < reads.size(); i++) {
+                PendingRead read = reads.get(i);
+                bufferPool.finishPendingRead(read, file.readPage(read.pid));
+            }
+        } catch (RuntimeException e) {
+            // read-ahead is only a hint; the page is read again on demand
+        } finally {
+            for (; i < reads.size(); i++) {
+                bufferPool.finishPendingRead(reads.get(i), null);
+            }
+        }
+    }
+
+    /**
+     * Follow the chain of right siblings from first for up to count leaves,
+     * reading those that are not cached yet into the given ring, if any.
+     */
+    private void readLeaves(BTreePageId first, int count, ScanRing ring) {
+        try {
+            DbFile file = Database.getCatalog().getDatabaseFile(first.getTableId());
+            BTreePageId pid = first;
+            for (int i = 0; i < count && pid != null; i++) {
+                PendingRead read = bufferPool.beginPendingRead(pid, ring, true);
+                if (read != null) {
+                    Page page = null;
+                    try {
+                        page = file.readPage(pid);
+                    } finally {
+                        bufferPool.finishPendingRead(read, page);
+                    }
+                }
+                Page page = bufferPool.cachedPage(pid);
+                if (!(page instanceof BTreeLeafPage)) {
+                    return;
+                }
+                pid = ((BTreeLeafPage) page).getRightSiblingId();
+            }
+        } catch (RuntimeException e) {
+            // read-ahead is only a hint; the page is read again on demand
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+
+/**
+ * ScanRing is the small set of frames a sequential scan over a table larger
+ * than the BufferPool reads its pages into. Once the ring is full, every
+ * further page the scan reads replaces the oldest page of the ring instead of
+ * a page chosen by the eviction policy, so that one large scan does not push
+ * the working set of other transactions out of the pool.
+ * <p>
+ * Pages that are already cached when the scan reaches them are used in place
+ * and do not join the ring. A page of the ring that has been dirtied in the
+ * meantime is left to the eviction policy; a pinned one, such as the page
+ * the scan is on, is passed over and moves to the tail of the ring.
+ *
+ * @see BufferPool#scanRing(int)
+ * @Threadsafe
+ */
+class ScanRing {
+    private final int capacity;
+    private final ArrayDeque<PageId> pages;
+    // frames taken by pages that are still being read
+    private int reserved;
+
+    /**
+     * @param capacity the number of frames of the ring
+     */
+    ScanRing(int capacity) {
+        this.capacity = capacity;
+        this.pages = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Record a page the scan has read into the buffer pool.
+     */
+    synchronized void add(PageId pid) {
+        pages.addLast(pid);
+    }
+
+    /**
+     * Reserve a frame of the ring for a page that is about to be read. Reads
+     * that run concurrently each hold their own reservation until they are
+     * done, so that together they do not grow the ring beyond its capacity.
+     */
+    synchronized void reserve() {
+        reserved++;
+    }
+
+    /**
+     * Remove the oldest page from the ring if the ring is over its capacity.
+     *
+     * @return the page whose frame should be reused, or null if the ring may
+     * still grow
+     */
+    synchronized PageId nextVictim() {
+        return pages.size() + reserved > capacity ? pages.pollFirst() : null;
+    }
+
+    /**
+     * Put a page that is still in use by the scan back at the tail of the
+     * ring.
+     */
+    synchronized void requeue(PageId pid) {
+        pages.addLast(pid);
+    }
+
+    /**
+     * Give back a reservation once the read it was taken for is done,
+     * whether or not its page joined the ring.
+     */
+    synchronized void release() {
+        reserved--;
+    }
+}
@@ -70,6 +70,20 @@ public class SeqScan implements DbIterator {
         return tableAlias;
     }
 
+    /**
+     * @return the id of the table the operator scans
+     */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return the transaction the operator is running as a part of
+     */
+    public TransactionId getTransactionId() {
+        return transactionId;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      *
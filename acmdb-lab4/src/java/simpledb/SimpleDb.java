@@ -35,6 +35,8 @@ public class SimpleDb {
                             ts[index++] = Type.INT_TYPE;
                         else if (s.toLowerCase().equals("string"))
                             ts[index++] = Type.STRING_TYPE;
+                        else if (s.toLowerCase().equals("varchar"))
+                            ts[index++] = Type.VARCHAR_TYPE;
                         else {
                             System.err.println("Unknown type " + s);
                             return;
@@ -0,0 +1,257 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The SortMergeJoin operator joins two relations that are ordered on their
+ * join fields by reading both in order. Inputs that are not already ordered
+ * on their join field (see {@link #isSorted}) are sorted first.
+ * <p>
+ * For EQUALS, both inputs are read once, and only the current run of right
+ * tuples with the same key is kept in memory. For the other comparisons the
+ * right relation is kept in memory, and the tuples matching each left tuple
+ * are a prefix (for &gt; and &gt;=) or a suffix (for &lt; and &lt;=) of it
+ * whose boundary only moves forward as the left key grows.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate predicate;
+    private DbIterator child1, child2;
+    /** The merged schema, computed once rather than for every tuple. */
+    private transient TupleDesc td;
+
+    /** The children, sorted on their join fields. */
+    private transient DbIterator left, right;
+    private transient Tuple current1;
+    /**
+     * EQUALS: the run of right tuples whose key is runKey, and the next
+     * right tuple after it.
+     */
+    private transient List<Tuple> run;
+    private transient Field runKey;
+    private transient Tuple next2;
+    /** Other comparisons: the sorted right relation. */
+    private transient List<Tuple> inner;
+    private transient int boundary;
+    /** The next and the end position in run or inner for current1. */
+    private transient int position, end;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on.
+     *
+     * @param p      The predicate to use to join the children; one of EQUALS,
+     *               GREATER_THAN, GREATER_THAN_OR_EQ, LESS_THAN and
+     *               LESS_THAN_OR_EQ
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation to join
+     * @throws IllegalArgumentException if the predicate is not supported
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        if (!supports(p.getOperator())) {
+            throw new IllegalArgumentException("sort-merge join does not support " + p.getOperator());
+        }
+        this.predicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+    }
+
+    /**
+     * @return true if a SortMergeJoin can join on the given comparison
+     */
+    public static boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    /**
+     * Returns whether an iterator returns its tuples in ascending order of a
+     * field. This holds for scans of B+ trees on their key field, for
+     * ascending OrderBys, for Filters of these, and for sort-merge joins on
+     * their left join field (and for EQUALS, their right join field).
+     */
+    public static boolean isSorted(DbIterator it, int field) {
+        if (it instanceof BTreeScan) {
+            return ((BTreeScan) it).getKeyField() == field;
+        }
+        if (it instanceof SeqScan) {
+            DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) it).getTableId());
+            return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+        }
+        if (it instanceof OrderBy) {
+            OrderBy o = (OrderBy) it;
+            return o.isASC() && o.getOrderByField() == field;
+        }
+        if (it instanceof Filter) {
+            return isSorted(((Filter) it).getChildren()[0], field);
+        }
+        if (it instanceof SortMergeJoin) {
+            SortMergeJoin j = (SortMergeJoin) it;
+            JoinPredicate p = j.getJoinPredicate();
+            return field == p.getField1() || (p.getOperator() == Predicate.Op.EQUALS
+                    && field == j.child1.getTupleDesc().numFields() + p.getField2());
+        }
+        return false;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return predicate;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(predicate.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(predicate.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        if (td == null) {
+            td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        }
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        left = isSorted(child1, predicate.getField1())
+                ? child1 : new OrderBy(predicate.getField1(), true, child1);
+        left.open();
+        if (predicate.getOperator() == Predicate.Op.EQUALS) {
+            right = isSorted(child2, predicate.getField2())
+                    ? child2 : new OrderBy(predicate.getField2(), true, child2);
+            right.open();
+            run = new ArrayList<>();
+        } else {
+            child2.open();
+            inner = new ArrayList<>();
+            while (child2.hasNext()) {
+                inner.add(child2.next());
+            }
+            if (!isSorted(child2, predicate.getField2())) {
+                int field2 = predicate.getField2();
+                inner.sort((t1, t2) -> compare(t1.getField(field2), t2.getField(field2)));
+            }
+        }
+        resetState();
+        super.open();
+    }
+
+    private static int compare(Field f1, Field f2) {
+        if (f1.compare(Predicate.Op.LESS_THAN, f2)) {
+            return -1;
+        }
+        return f1.compare(Predicate.Op.GREATER_THAN, f2) ? 1 : 0;
+    }
+
+    private void resetState() throws DbException, TransactionAbortedException {
+        current1 = null;
+        position = end = 0;
+        boundary = 0;
+        runKey = null;
+        if (run != null) {
+            run.clear();
+            next2 = right.hasNext() ? right.next() : null;
+        }
+    }
+
+    public void close() {
+        super.close();
+        if (left != null && left != child1) {
+            left.close();
+        }
+        if (right != null && right != child2) {
+            right.close();
+        }
+        child1.close();
+        child2.close();
+        left = right = null;
+        run = inner = null;
+        current1 = next2 = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        left.rewind();
+        if (right != null) {
+            right.rewind();
+        }
+        resetState();
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. Tuples are returned in ascending order of the left join
+     * field.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        List<Tuple> matches = run != null ? run : inner;
+        while (true) {
+            if (position < end) {
+                return Tuple.merge(getTupleDesc(), current1, matches.get(position++));
+            }
+            if (!left.hasNext()) {
+                return null;
+            }
+            current1 = left.next();
+            if (run != null) {
+                mergeEquals();
+            } else {
+                mergeRange();
+            }
+        }
+    }
+
+    /**
+     * Find the run of right tuples equal to current1.
+     */
+    private void mergeEquals() throws TransactionAbortedException, DbException {
+        Field key = current1.getField(predicate.getField1());
+        if (runKey == null || !runKey.equals(key)) {
+            run.clear();
+            runKey = key;
+            int field2 = predicate.getField2();
+            while (next2 != null && next2.getField(field2).compare(Predicate.Op.LESS_THAN, key)) {
+                next2 = right.hasNext() ? right.next() : null;
+            }
+            while (next2 != null && next2.getField(field2).equals(key)) {
+                run.add(next2);
+                next2 = right.hasNext() ? right.next() : null;
+            }
+        }
+        position = 0;
+        end = run.size();
+    }
+
+    /**
+     * Move the boundary of the right tuples matching current1: for &gt; and
+     * &gt;= the matches are the ones before it, while for &lt; and &lt;= they
+     * are the ones from it on.
+     */
+    private void mergeRange() {
+        boolean prefix = predicate.getOperator() == Predicate.Op.GREATER_THAN
+                || predicate.getOperator() == Predicate.Op.GREATER_THAN_OR_EQ;
+        while (boundary < inner.size() && predicate.filter(current1, inner.get(boundary)) == prefix) {
+            boundary++;
+        }
+        position = prefix ? 0 : boundary;
+        end = prefix ? boundary : inner.size();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        assert children.length == 2;
+        this.child1 = children[0];
+        this.child2 = children[1];
+        this.td = null;
+    }
+}
@@ -0,0 +1,170 @@
+package simpledb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * SpillFile is a temporary file of tuples, for operators whose state does
+ * not fit into memory. Tuples are appended with {@link #add(Tuple)} and
+ * read back, as often as needed, through {@link #iterator()}. The file is
+ * removed by {@link #delete()}, or when the JVM exits.
+ */
+class SpillFile {
+
+    private final TupleDesc td;
+    private final File file;
+    private DataOutputStream out;
+    private int size;
+
+    /**
+     * Create an empty spill file.
+     *
+     * @param td the schema of the tuples
+     */
+    SpillFile(TupleDesc td) throws DbException {
+        this.td = td;
+        try {
+            file = File.createTempFile("spill", ".dat");
+            file.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), BufferPool.getPageSize()));
+        } catch (IOException e) {
+            throw new DbException("could not create spill file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of tuples in this file
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Append a tuple. Tuples can no longer be added once the file has been
+     * read.
+     */
+    void add(Tuple t) throws DbException {
+        try {
+            if (td.isAllInt()) {
+                for (int i = 0; i < td.numFields(); i++) {
+                    out.writeInt(t.getInt(i));
+                }
+            } else {
+                for (int i = 0; i < td.numFields(); i++) {
+                    t.getField(i).serialize(out);
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("could not write spill file: " + e.getMessage());
+        }
+        size++;
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file, in the order they
+     * were added. The iterator supports rewind.
+     */
+    DbIterator iterator() throws DbException {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new DbException("could not write spill file: " + e.getMessage());
+            }
+            out = null;
+        }
+        return new SpillIterator();
+    }
+
+    /**
+     * Remove the file.
+     */
+    void delete() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the file goes away anyway
+            }
+            out = null;
+        }
+        file.delete();
+    }
+
+    private class SpillIterator extends Operator {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient DataInputStream in;
+        private transient int read;
+
+        public void open() throws DbException, TransactionAbortedException {
+            try {
+                in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file), BufferPool.getPageSize()));
+            } catch (IOException e) {
+                throw new DbException("could not read spill file: " + e.getMessage());
+            }
+            read = 0;
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+                in = null;
+            }
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        protected Tuple fetchNext() throws DbException {
+            if (read == size) {
+                return null;
+            }
+            Tuple t = new Tuple(td);
+            try {
+                if (td.isAllInt()) {
+                    for (int i = 0; i < td.numFields(); i++) {
+                        t.setInt(i, in.readInt());
+                    }
+                } else {
+                    for (int i = 0; i < td.numFields(); i++) {
+                        t.setField(i, td.getFieldType(i).parse(in));
+                    }
+                }
+            } catch (IOException | ParseException e) {
+                throw new DbException("could not read spill file: " + e.getMessage());
+            }
+            read++;
+            return t;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        public DbIterator[] getChildren() {
+            return new DbIterator[0];
+        }
+
+        public void setChildren(DbIterator[] children) {
+        }
+    }
+}
@@ -50,17 +50,16 @@ public class StringAggregator implements Aggregator {
         // some code goes here
         assert tuple.getField(field) instanceof StringField;
         Field key = groupByField == NO_GROUPING ? null : tuple.getField(groupByField);
-        String value = ((StringField) tuple.getField(field)).getValue();
 
         Tuple oldTuple = groupTuple.getOrDefault(key, null);
-        int oldValue = oldTuple == null ? 0 : ((IntField) oldTuple.getField(key == null ? 0 : 1)).getValue();
+        int oldValue = oldTuple == null ? 0 : oldTuple.getInt(key == null ? 0 : 1);
 
         Tuple newTuple = oldTuple == null ? new Tuple(tupleDesc) : oldTuple;
         if (key != null) {
             newTuple.setField(0, key);
-            newTuple.setField(1, new IntField(oldValue + 1));
+            newTuple.setInt(1, oldValue + 1);
         } else {
-            newTuple.setField(0, new IntField(oldValue + 1));
+            newTuple.setInt(0, oldValue + 1);
         }
         groupTuple.put(key, newTuple);
     }
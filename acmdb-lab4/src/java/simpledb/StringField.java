@@ -4,7 +4,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 
 /**
- * Instance of Field that stores a single String of a fixed length.
+ * Instance of Field that stores a single String of at most a fixed length.
+ * Fields of {@link Type#STRING_TYPE} are stored with that length; fields of
+ * {@link Type#VARCHAR_TYPE} only take as many bytes as the string has.
  */
 public class StringField implements Field {
 
@@ -12,6 +14,7 @@ public class StringField implements Field {
 
     private final String value;
     private final int maxSize;
+    private final Type type;
 
     /**
      * Constructor.
@@ -20,7 +23,19 @@ public class StringField implements Field {
      * @param maxSize The maximum size of this string
      */
     public StringField(String s, int maxSize) {
+        this(s, maxSize, Type.STRING_TYPE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param s       The value of this field.
+     * @param maxSize The maximum size of this string
+     * @param type    STRING_TYPE or VARCHAR_TYPE
+     */
+    public StringField(String s, int maxSize, Type type) {
         this.maxSize = maxSize;
+        this.type = type;
 
         if (s.length() > maxSize)
             value = s.substring(0, maxSize);
@@ -45,13 +60,19 @@ public class StringField implements Field {
     }
 
     /**
-     * Write this string to dos. Always writes maxSize + 4 bytes to the passed
-     * in dos. First four bytes are string length, next bytes are string, with
-     * remainder padded with 0 to maxSize.
+     * Write this string to dos. For STRING_TYPE, always writes maxSize + 4
+     * bytes to the passed in dos. First four bytes are string length, next
+     * bytes are string, with remainder padded with 0 to maxSize. For
+     * VARCHAR_TYPE, writes the length in two bytes followed by the string.
      *
      * @param dos Where the string is written
      */
     public void serialize(DataOutputStream dos) throws IOException {
+        if (type == Type.VARCHAR_TYPE) {
+            dos.writeShort(value.length());
+            dos.writeBytes(value);
+            return;
+        }
         String s = value;
         int overflow = maxSize - s.length();
         if (overflow < 0) {
@@ -64,6 +85,19 @@ public class StringField implements Field {
             dos.write((byte) 0);
     }
 
+    @Override
+    public void serializeFixed(DataOutputStream dos) throws IOException {
+        serialize(dos);
+        for (int i = getSerializedLength(); i < type.getLen(); i++) {
+            dos.write((byte) 0);
+        }
+    }
+
+    @Override
+    public int getSerializedLength() {
+        return type == Type.VARCHAR_TYPE ? 2 + value.length() : type.getLen();
+    }
+
     /**
      * Compare the specified field to the value of this Field. Return semantics
      * are as specified by Field.compare
@@ -107,6 +141,6 @@ public class StringField implements Field {
      */
     public Type getType() {
 
-        return Type.STRING_TYPE;
+        return type;
     }
 }
@@ -1,7 +1,6 @@
 package simpledb;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 
@@ -16,7 +15,20 @@ public class Tuple implements Serializable {
 
     private TupleDesc td;
     private RecordId rid;
-    private ArrayList<Field> fields;
+    /**
+     * The fields of this tuple. For tuples kept in ints, only the fields
+     * that have been asked for through getField, or null if there are none.
+     */
+    private Field[] fields;
+    /**
+     * For schemas with only int fields, the values of the fields, so that
+     * they do not each need an IntField; null otherwise.
+     */
+    private int[] ints;
+    /**
+     * For tuples kept in ints, one bit for each field that has been set.
+     */
+    private long set;
 
     /**
      * Create a new tuple with the specified schema (type).
@@ -26,8 +38,19 @@ public class Tuple implements Serializable {
      */
     public Tuple(TupleDesc td) {
         // some code goes here
+        init(td);
+    }
+
+    private void init(TupleDesc td) {
         this.td = td;
-        this.fields = new ArrayList<>(Arrays.asList(new Field[td.numFields()]));
+        if (td.isAllInt() && td.numFields() <= Long.SIZE) {
+            this.ints = new int[td.numFields()];
+            this.fields = null;
+        } else {
+            this.ints = null;
+            this.fields = new Field[td.numFields()];
+        }
+        this.set = 0;
     }
 
     /**
@@ -65,7 +88,42 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        fields.set(i, f);
+        if (ints != null && f != null && !(f instanceof IntField)) {
+            // does not match the schema; keep the fields as they are given
+            inflate();
+        }
+        if (ints == null) {
+            fields[i] = f;
+            return;
+        }
+        if (f == null) {
+            set &= ~(1L << i);
+        } else {
+            ints[i] = ((IntField) f).getValue();
+            set |= 1L << i;
+        }
+        if (fields != null) {
+            fields[i] = f;
+        }
+    }
+
+    /**
+     * Change the value of the ith field of this tuple, which must be an int
+     * field, without boxing it.
+     *
+     * @param i index of the field to change. It must be a valid index.
+     * @param value new value for the field.
+     */
+    public void setInt(int i, int value) {
+        if (ints == null) {
+            fields[i] = new IntField(value);
+            return;
+        }
+        ints[i] = value;
+        set |= 1L << i;
+        if (fields != null) {
+            fields[i] = null;
+        }
     }
 
     /**
@@ -74,7 +132,57 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return fields.get(i);
+        if (ints == null) {
+            return fields[i];
+        }
+        if ((set & (1L << i)) == 0) {
+            return null;
+        }
+        if (fields == null) {
+            fields = new Field[ints.length];
+        }
+        Field f = fields[i];
+        if (f == null) {
+            f = new IntField(ints[i]);
+            fields[i] = f;
+        }
+        return f;
+    }
+
+    /**
+     * @param i index of an int field that has been set.
+     * @return the value of the ith field, without boxing it.
+     */
+    public int getInt(int i) {
+        if (ints != null) {
+            return ints[i];
+        }
+        return ((IntField) fields[i]).getValue();
+    }
+
+    /**
+     * Set the ith field of this tuple to the jth field of another one.
+     * Int fields are copied without boxing them.
+     */
+    public void copyField(int i, Tuple from, int j) {
+        if (ints != null && from.ints != null && (from.set & (1L << j)) != 0) {
+            setInt(i, from.ints[j]);
+        } else {
+            setField(i, from.getField(j));
+        }
+    }
+
+    /**
+     * Switch a tuple kept in ints to a plain array of fields.
+     */
+    private void inflate() {
+        Field[] all = new Field[ints.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = getField(i);
+        }
+        fields = all;
+        ints = null;
+        set = 0;
     }
 
     /**
@@ -88,13 +196,11 @@ public class Tuple implements Serializable {
     public String toString() {
         // some code goes here
         StringBuilder builder = new StringBuilder();
-        boolean first = true;
-        for (Field e: fields) {
-            if (!first) {
+        for (int i = 0; i < td.numFields(); i++) {
+            if (i > 0) {
                 builder.append('\t');
             }
-            first = false;
-            builder.append(e.toString());
+            builder.append(ints != null && fields == null ? Integer.toString(ints[i]) : String.valueOf(getField(i)));
         }
         return builder.toString();
     }
@@ -104,7 +210,11 @@ public class Tuple implements Serializable {
      */
     public Iterator<Field> fields() {
         // some code goes here
-        return fields.iterator();
+        Field[] all = new Field[td.numFields()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = getField(i);
+        }
+        return Arrays.asList(all).iterator();
     }
 
     /**
@@ -112,15 +222,29 @@ public class Tuple implements Serializable {
      */
     public void resetTupleDesc(TupleDesc td) {
         // some code goes here
-        this.td = td;
-        this.fields = new ArrayList<>(Arrays.asList(new Field[td.numFields()]));
+        init(td);
     }
 
     public static Tuple merge(Tuple a, Tuple b) {
-        Tuple merged = new Tuple(TupleDesc.merge(a.getTupleDesc(), b.getTupleDesc()));
+        return merge(TupleDesc.merge(a.getTupleDesc(), b.getTupleDesc()), a, b);
+    }
+
+    /**
+     * Concatenate the fields of two tuples into a new tuple of the given
+     * schema, which callers joining many tuples compute once with
+     * {@link TupleDesc#merge}.
+     */
+    public static Tuple merge(TupleDesc td, Tuple a, Tuple b) {
+        Tuple merged = new Tuple(td);
 
         int fieldNumberA = a.getTupleDesc().numFields();
         int fieldNumberB = b.getTupleDesc().numFields();
+        if (merged.ints != null && a.ints != null && b.ints != null) {
+            System.arraycopy(a.ints, 0, merged.ints, 0, fieldNumberA);
+            System.arraycopy(b.ints, 0, merged.ints, fieldNumberA, fieldNumberB);
+            merged.set = a.set | (b.set << fieldNumberA);
+            return merged;
+        }
         for (int i = 0; i < fieldNumberA; i++) {
             merged.setField(i, a.getField(i));
         }
@@ -0,0 +1,228 @@
+package simpledb;
+
+/**
+ * TupleBatch holds up to a fixed number of rows of a schema column by
+ * column, for operators that process many rows per call instead of one
+ * tuple at a time; see {@link BatchIterator}.
+ * <p>
+ * Int columns are kept in int arrays, other columns in arrays of Fields.
+ * A selection vector lists the rows that are part of the batch, so that
+ * operators like {@link BatchFilter} can drop rows without copying the
+ * columns. Operators address rows through {@link #row(int)}:
+ * <pre>
+ * for (int i = 0; i &lt; batch.size(); i++) {
+ *     int row = batch.row(i);
+ *     ... batch.getInt(column, row) ...
+ * }
+ * </pre>
+ */
+public class TupleBatch {
+
+    /**
+     * The number of rows batch operators put into a batch unless they are
+     * told otherwise.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    /**
+     * The values of each column: int[] for int columns, Field[] for the
+     * others. Projections share these arrays with the batch they were made
+     * from.
+     */
+    private final Object[] columns;
+    /**
+     * The number of rows filled in, selected or not.
+     */
+    private int rows;
+    /**
+     * The rows that are part of the batch, in order, or null if all rows
+     * are.
+     */
+    private int[] selection;
+    private int selected;
+
+    /**
+     * Create an empty batch.
+     *
+     * @param td       the schema of the rows
+     * @param capacity the maximum number of rows
+     */
+    public TupleBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        this.columns = new Object[td.numFields()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = td.getFieldType(i) == Type.INT_TYPE ? new int[capacity] : new Field[capacity];
+        }
+    }
+
+    private TupleBatch(TupleDesc td, int capacity, Object[] columns) {
+        this.td = td;
+        this.capacity = capacity;
+        this.columns = columns;
+    }
+
+    /**
+     * @return the schema of the rows of this batch
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of rows that are part of this batch
+     */
+    public int size() {
+        return selection == null ? rows : selected;
+    }
+
+    /**
+     * @return true if no more rows can be added
+     */
+    public boolean isFull() {
+        return rows == capacity;
+    }
+
+    /**
+     * @param i a number between 0 and size() - 1
+     * @return the index of the ith row that is part of this batch, which is
+     * what the accessors take
+     */
+    public int row(int i) {
+        return selection == null ? i : selection[i];
+    }
+
+    /**
+     * Restrict the batch to some of its rows.
+     *
+     * @param rows  the indexes of the rows to keep, in increasing order; the
+     *              batch keeps the array, which callers must not change
+     *              afterwards
+     * @param count the number of entries of rows to use
+     */
+    public void select(int[] rows, int count) {
+        this.selection = rows;
+        this.selected = count;
+    }
+
+    /**
+     * Returns the value of an int column without boxing it.
+     */
+    public int getInt(int column, int row) {
+        return ((int[]) columns[column])[row];
+    }
+
+    /**
+     * Returns the value of a column as a Field.
+     */
+    public Field getField(int column, int row) {
+        Object values = columns[column];
+        if (values instanceof int[]) {
+            return new IntField(((int[]) values)[row]);
+        }
+        return ((Field[]) values)[row];
+    }
+
+    /**
+     * @return true if the given column is kept as ints
+     */
+    public boolean isIntColumn(int column) {
+        return columns[column] instanceof int[];
+    }
+
+    /**
+     * Returns the given row as a tuple.
+     */
+    public Tuple getTuple(int row) {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < columns.length; i++) {
+            copyTo(t, i, i, row);
+        }
+        return t;
+    }
+
+    /**
+     * Copy the value of a column of a row into a field of a tuple.
+     */
+    void copyTo(Tuple t, int field, int column, int row) {
+        Object values = columns[column];
+        if (values instanceof int[]) {
+            t.setInt(field, ((int[]) values)[row]);
+        } else {
+            t.setField(field, ((Field[]) values)[row]);
+        }
+    }
+
+    /**
+     * Add a row with the fields of a tuple. The batch must not be full, and
+     * must not have a selection.
+     *
+     * @return the index of the new row
+     */
+    public int add(Tuple t) {
+        int row = addRow();
+        for (int i = 0; i < columns.length; i++) {
+            copyFrom(i, row, t, i);
+        }
+        return row;
+    }
+
+    /**
+     * Add a row whose columns are then set one by one. The batch must not be
+     * full, and must not have a selection.
+     *
+     * @return the index of the new row
+     */
+    public int addRow() {
+        assert selection == null;
+        if (rows == capacity) {
+            throw new IllegalStateException("batch is full");
+        }
+        return rows++;
+    }
+
+    /**
+     * Set a column of a row to a field of a tuple.
+     */
+    void copyFrom(int column, int row, Tuple t, int field) {
+        Object values = columns[column];
+        if (values instanceof int[]) {
+            ((int[]) values)[row] = t.getInt(field);
+        } else {
+            ((Field[]) values)[row] = t.getField(field);
+        }
+    }
+
+    /**
+     * Set a column of a row to a column of a row of another batch.
+     */
+    void copyFrom(int column, int row, TupleBatch from, int fromColumn, int fromRow) {
+        Object values = columns[column];
+        if (values instanceof int[]) {
+            ((int[]) values)[row] = from.getInt(fromColumn, fromRow);
+        } else {
+            ((Field[]) values)[row] = from.getField(fromColumn, fromRow);
+        }
+    }
+
+    /**
+     * Returns a batch with some of the columns of this one, and the same
+     * rows. The two batches share their values.
+     *
+     * @param fields the columns of this batch to keep, in their new order
+     * @param td     the schema of the new batch
+     */
+    public TupleBatch project(int[] fields, TupleDesc td) {
+        Object[] projected = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            projected[i] = columns[fields[i]];
+        }
+        TupleBatch batch = new TupleBatch(td, capacity, projected);
+        batch.rows = rows;
+        batch.selection = selection;
+        batch.selected = selected;
+        return batch;
+    }
+}
@@ -1,18 +1,52 @@
 package simpledb;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * TupleDesc describes the schema of a tuple.
+ * <p>
+ * TupleDescs are immutable. The size of tuples, the byte offset of each
+ * field and the index of each field name are computed once, when the
+ * TupleDesc is created.
  */
 public class TupleDesc implements Serializable {
 
     private static final long serialVersionUID = 1L;
-    private ArrayList<TDItem> contents;
+    private final TDItem[] items;
+    /**
+     * Byte offset of each field in a serialized tuple, with an extra entry
+     * for the end of the tuple. Offsets of fields after a variable-length
+     * field assume it takes its maximum length.
+     */
+    private final int[] offsets;
+    private final int minSize;
+    private final boolean variableLength;
+    private final boolean allInt;
+    /**
+     * Index of the first field with each name.
+     */
+    private final HashMap<String, Integer> nameToIndex;
+    /**
+     * The last merge of this TupleDesc with another one, so that operators
+     * merging the same pair of schemas over and over get the same instance.
+     */
+    private transient volatile Merge lastMerge;
+
+    private static final class Merge {
+        final TupleDesc other;
+        final TupleDesc merged;
+
+        Merge(TupleDesc other, TupleDesc merged) {
+            this.other = other;
+            this.merged = merged;
+        }
+    }
 
     /**
      * Create a new TupleDesc with typeAr.length fields with fields of the
@@ -27,10 +61,26 @@ public class TupleDesc implements Serializable {
         // some code goes here
         assert typeAr.length > 0;
         assert typeAr.length == fieldAr.length;
-        contents = new ArrayList<>();
+        items = new TDItem[typeAr.length];
         for (int i = 0; i < typeAr.length; i++) {
-            contents.add(new TDItem(typeAr[i], fieldAr[i]));
+            items[i] = new TDItem(typeAr[i], fieldAr[i]);
+        }
+        offsets = new int[items.length + 1];
+        nameToIndex = new HashMap<>();
+        int min = 0;
+        boolean variable = false;
+        boolean ints = true;
+        for (int i = 0; i < items.length; i++) {
+            Type t = items[i].fieldType;
+            offsets[i + 1] = offsets[i] + t.getLen();
+            min += t.getMinLen();
+            variable |= t.isVariableLength();
+            ints &= t == Type.INT_TYPE;
+            nameToIndex.putIfAbsent(items[i].fieldName, i);
         }
+        minSize = min;
+        variableLength = variable;
+        allInt = ints;
     }
 
     /**
@@ -42,16 +92,13 @@ public class TupleDesc implements Serializable {
      */
     public TupleDesc(Type[] typeAr) {
         // some code goes here
-        assert typeAr.length > 0;
-        contents = new ArrayList<>();
-        for (int i = 0; i < typeAr.length; i++) {
-            contents.add(new TDItem(typeAr[i], null));
-        }
+        this(typeAr, new String[typeAr.length]);
     }
 
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
+     * Merging the same two TupleDescs again usually returns the same instance.
      *
      * @param td1 The TupleDesc with the first fields of the new TupleDesc
      * @param td2 The TupleDesc with the last fields of the TupleDesc
@@ -59,21 +106,25 @@ public class TupleDesc implements Serializable {
      */
     public static TupleDesc merge(TupleDesc td1, TupleDesc td2) {
         // some code goes here
+        Merge last = td1.lastMerge;
+        if (last != null && last.other == td2) {
+            return last.merged;
+        }
         int td1Size = td1.numFields();
         int td2Size = td2.numFields();
         Type[] typeAr = new Type[td1Size + td2Size];
         String[] nameAr = new String[td1Size + td2Size];
         for (int i = 0; i < td1Size; i++) {
-            TDItem tmp = td1.contents.get(i);
-            typeAr[i] = tmp.fieldType;
-            nameAr[i] = tmp.fieldName;
+            typeAr[i] = td1.items[i].fieldType;
+            nameAr[i] = td1.items[i].fieldName;
         }
         for (int i = 0; i < td2Size; i++) {
-            TDItem tmp = td2.contents.get(i);
-            typeAr[td1Size + i] = tmp.fieldType;
-            nameAr[td1Size + i] = tmp.fieldName;
+            typeAr[td1Size + i] = td2.items[i].fieldType;
+            nameAr[td1Size + i] = td2.items[i].fieldName;
         }
-        return new TupleDesc(typeAr, nameAr);
+        TupleDesc merged = new TupleDesc(typeAr, nameAr);
+        td1.lastMerge = new Merge(td2, merged);
+        return merged;
     }
 
     /**
@@ -82,7 +133,7 @@ public class TupleDesc implements Serializable {
      */
     public Iterator<TDItem> iterator() {
         // some code goes here
-        return contents.iterator();
+        return Collections.unmodifiableList(Arrays.asList(items)).iterator();
     }
 
     /**
@@ -90,7 +141,7 @@ public class TupleDesc implements Serializable {
      */
     public int numFields() {
         // some code goes here
-        return contents.size();
+        return items.length;
     }
 
     /**
@@ -102,10 +153,10 @@ public class TupleDesc implements Serializable {
      */
     public String getFieldName(int i) throws NoSuchElementException {
         // some code goes here
-        if (i < 0 || i >= contents.size()) {
+        if (i < 0 || i >= items.length) {
             throw new NoSuchElementException();
         }
-        return contents.get(i).fieldName;
+        return items[i].fieldName;
     }
 
     /**
@@ -118,10 +169,10 @@ public class TupleDesc implements Serializable {
      */
     public Type getFieldType(int i) throws NoSuchElementException {
         // some code goes here
-        if (i < 0 || i >= contents.size()) {
+        if (i < 0 || i >= items.length) {
             throw new NoSuchElementException();
         }
-        return contents.get(i).fieldType;
+        return items[i].fieldType;
     }
 
     /**
@@ -133,23 +184,75 @@ public class TupleDesc implements Serializable {
      */
     public int fieldNameToIndex(String name) throws NoSuchElementException {
         // some code goes here
-        for (int i = 0; i < contents.size(); i++) {
-            if (Objects.equals(name, contents.get(i).fieldName)) {
-                return i;
-            }
+        Integer i = nameToIndex.get(name);
+        if (i == null) {
+            throw new NoSuchElementException();
         }
-        throw new NoSuchElementException();
+        return i;
+    }
+
+    /**
+     * Gets the byte offset of the ith field in a tuple of this TupleDesc
+     * laid out with fixed-size fields, as HeapPage and the B+ tree pages do
+     * for tables without variable-length fields.
+     *
+     * @param i The index of the field. It must be a valid index.
+     * @return the offset of the ith field from the start of the tuple
+     * @throws NoSuchElementException if i is not a valid field reference.
+     */
+    public int getOffset(int i) throws NoSuchElementException {
+        if (i < 0 || i >= items.length) {
+            throw new NoSuchElementException();
+        }
+        return offsets[i];
     }
 
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
-     * Note that tuples from a given TupleDesc are of a fixed size.
+     * Note that tuples from a given TupleDesc are of a fixed size, unless
+     * the TupleDesc has variable-length fields; then this is the size of the
+     * largest tuple.
      */
     public int getSize() {
         // some code goes here
+        return offsets[items.length];
+    }
+
+    /**
+     * @return The size (in bytes) of the smallest tuple corresponding to
+     * this TupleDesc.
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return true if tuples of this TupleDesc differ in size, because some
+     * field has a variable-length type.
+     */
+    public boolean isVariableLength() {
+        return variableLength;
+    }
+
+    /**
+     * @return true if all fields of this TupleDesc are ints, so that tuples
+     * can keep them unboxed.
+     */
+    public boolean isAllInt() {
+        return allInt;
+    }
+
+    /**
+     * @return The size (in bytes) the given tuple of this TupleDesc takes
+     * when its fields are serialized one after the other.
+     */
+    public int getSize(Tuple t) {
+        if (!variableLength) {
+            return getSize();
+        }
         int result = 0;
-        for (TDItem i : contents) {
-            result += i.fieldType.getLen();
+        for (int i = 0; i < items.length; i++) {
+            result += t.getField(i).getSerializedLength();
         }
         return result;
     }
@@ -164,13 +267,15 @@ public class TupleDesc implements Serializable {
      */
     public boolean equals(Object o) {
         // some code goes here
-        if (!(o instanceof TupleDesc)) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof TupleDesc)) {
             return false;
-        } else if (((TupleDesc) o).contents.size() != contents.size()) {
+        } else if (((TupleDesc) o).items.length != items.length) {
             return false;
         } else {
-            for (int i = 0; i < contents.size(); i++) {
-                if (!Objects.equals(contents.get(i).fieldType, ((TupleDesc) o).contents.get(i).fieldType)) {
+            for (int i = 0; i < items.length; i++) {
+                if (!Objects.equals(items[i].fieldType, ((TupleDesc) o).items[i].fieldType)) {
                     return false;
                 }
             }
@@ -179,9 +284,12 @@ public class TupleDesc implements Serializable {
     }
 
     public int hashCode() {
-        // If you want to use TupleDesc as keys for HashMap, implement this so
-        // that equal objects have equals hashCode() results
-        throw new UnsupportedOperationException("unimplemented");
+        // only the types take part in equals
+        int result = 1;
+        for (TDItem i : items) {
+            result = 31 * result + i.fieldType.hashCode();
+        }
+        return result;
     }
 
     /**
@@ -195,7 +303,7 @@ public class TupleDesc implements Serializable {
         // some code goes here
         StringBuilder builder = new StringBuilder();
         boolean first = true;
-        for (TDItem i : contents) {
+        for (TDItem i : items) {
             if (!first) {
                 builder.append(", ");
             }
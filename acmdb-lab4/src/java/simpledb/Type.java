@@ -44,15 +44,72 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+    }, VARCHAR_TYPE() {
+        @Override
+        public int getLen() {
+            return STRING_LEN + 2;
+        }
+
+        @Override
+        public int getMinLen() {
+            return 2;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                int strLen = dis.readUnsignedShort();
+                byte bs[] = new byte[strLen];
+                dis.readFully(bs);
+                return new StringField(new String(bs), STRING_LEN, VARCHAR_TYPE);
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parseFixed(DataInputStream dis) throws ParseException {
+            StringField f = (StringField) parse(dis);
+            try {
+                dis.skipBytes(STRING_LEN - f.getValue().length());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+            return f;
+        }
     };
 
     public static final int STRING_LEN = 128;
 
     /**
      * @return the number of bytes required to store a field of this type.
+     * For variable-length types, this is the maximum.
      */
     public abstract int getLen();
 
+    /**
+     * @return the number of bytes required to store the shortest field of
+     * this type; less than getLen() for variable-length types.
+     */
+    public int getMinLen() {
+        return getLen();
+    }
+
+    /**
+     * @return true if fields of this type take a different number of bytes
+     * depending on their value.
+     */
+    public boolean isVariableLength() {
+        return getMinLen() != getLen();
+    }
+
+    /**
+     * @return true if fields of this type hold strings.
+     */
+    public boolean isString() {
+        return this == STRING_TYPE || this == VARCHAR_TYPE;
+    }
+
     /**
      * @param dis The input stream to read from
      * @return a Field object of the same type as this object that has contents
@@ -62,4 +119,13 @@ public enum Type implements Serializable {
      */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+    /**
+     * Like {@link #parse(DataInputStream)}, for a field written with
+     * {@link Field#serializeFixed}: also skips the padding after
+     * variable-length fields.
+     */
+    public Field parseFixed(DataInputStream dis) throws ParseException {
+        return parse(dis);
+    }
+
 }
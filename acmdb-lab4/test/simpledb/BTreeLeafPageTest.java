@@ -14,6 +14,8 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -206,6 +208,22 @@ public class BTreeLeafPageTest extends SimpleDbTestBase {
 			assertFalse(page.isSlotUsed(i));
 	}
 
+	/**
+	 * The before-image shares the data the page was read from until it is
+	 * set again, and still shows the page as read after it changes.
+	 */
+	@Test public void beforeImage() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		assertSame(EXAMPLE_DATA, page.oldData);
+		int tuples = page.getNumTuples();
+		page.deleteTuple(page.iterator().next());
+		assertEquals(tuples, page.getBeforeImage().getNumTuples());
+
+		page.setBeforeImage();
+		assertNotSame(EXAMPLE_DATA, page.oldData);
+		assertEquals(tuples - 1, page.getBeforeImage().getNumTuples());
+	}
+
 	/**
 	 * Unit test for BTreeLeafPage.isDirty()
 	 */
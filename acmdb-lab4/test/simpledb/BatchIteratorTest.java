@@ -0,0 +1,126 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BatchIteratorTest extends SimpleDbTestBase {
+
+    private HeapFile table1;
+    private HeapFile table2;
+    private ArrayList<ArrayList<Integer>> tuples1;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples1 = new ArrayList<>();
+        table1 = SystemTestUtil.createRandomHeapFile(3, 3000, 100, null, tuples1);
+        table2 = SystemTestUtil.createRandomHeapFile(2, 500, 100, null, null);
+        tid = new TransactionId();
+    }
+
+    private static ArrayList<ArrayList<Integer>> collect(DbIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            result.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        it.close();
+        return result;
+    }
+
+    private BatchSeqScan scan(HeapFile f, int capacity) {
+        return new BatchSeqScan(tid, f.getId(), "t", capacity);
+    }
+
+    /**
+     * A scan in batches returns every tuple, and the adapters convert both
+     * ways without losing any.
+     */
+    @Test public void scanAndAdapters() throws Exception {
+        SystemTestUtil.matchTuples(new BatchDbIterator(scan(table1, 7)), tuples1);
+        SystemTestUtil.matchTuples(new BatchDbIterator(
+                new BatchAdapter(new SeqScan(tid, table1.getId(), "t"), 100)), tuples1);
+
+        // the tuple-at-a-time child of an adapter can be replaced
+        BatchDbIterator adapted = new BatchDbIterator(
+                new BatchAdapter(new SeqScan(tid, table2.getId(), "t"), 100));
+        assertEquals(1, adapted.getChildren().length);
+        adapted.setChildren(new DbIterator[]{new SeqScan(tid, table1.getId(), "t")});
+        SystemTestUtil.matchTuples(adapted, tuples1);
+        BatchDbIterator batched = new BatchDbIterator(scan(table1, 7));
+        batched.setChildren(batched.getChildren());
+        SystemTestUtil.matchTuples(batched, tuples1);
+
+        BatchSeqScan scan = scan(table1, 1000);
+        scan.open();
+        assertEquals(1000, scan.nextBatch().size());
+        assertEquals(1000, scan.nextBatch().size());
+        assertEquals(1000, scan.nextBatch().size());
+        assertNull(scan.nextBatch());
+        scan.close();
+    }
+
+    /**
+     * Filters narrow the selection of a batch and projections share its
+     * columns, giving the same rows as the tuple-at-a-time operators.
+     */
+    @Test public void filterAndProject() throws Exception {
+        Predicate p1 = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(30));
+        Predicate p2 = new Predicate(2, Predicate.Op.LESS_THAN_OR_EQ, new IntField(70));
+        ArrayList<ArrayList<Integer>> expected = collect(new Project(
+                new ArrayList<>(Arrays.asList(2, 0)), new Type[] {Type.INT_TYPE, Type.INT_TYPE},
+                new Filter(p2, new Filter(p1, new SeqScan(tid, table1.getId(), "t")))));
+
+        BatchIterator plan = new BatchProject(Arrays.asList(2, 0),
+                new BatchFilter(p2, new BatchFilter(p1, scan(table1, 64))));
+        assertEquals("t." + table1.getTupleDesc().getFieldName(2), plan.getTupleDesc().getFieldName(0));
+        SystemTestUtil.matchTuples(new BatchDbIterator(plan), expected);
+    }
+
+    /**
+     * The batch hash join produces the same rows as HashEquiJoin, including
+     * for probe rows with more matches than fit in one batch.
+     */
+    @Test public void hashJoin() throws Exception {
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        ArrayList<ArrayList<Integer>> expected = collect(new HashEquiJoin(p,
+                new SeqScan(tid, table1.getId(), "a"), new SeqScan(tid, table2.getId(), "b")));
+
+        BatchIterator plan = new BatchHashEquiJoin(p, scan(table1, 100), scan(table2, 100), 16);
+        SystemTestUtil.matchTuples(new BatchDbIterator(plan), expected);
+    }
+
+    /**
+     * Batch aggregates agree with Aggregate, with and without grouping.
+     */
+    @Test public void aggregate() throws Exception {
+        for (Aggregator.Op op : new Aggregator.Op[] {Aggregator.Op.SUM, Aggregator.Op.COUNT,
+                Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG}) {
+            for (int group : new int[] {Aggregator.NO_GROUPING, 1}) {
+                ArrayList<ArrayList<Integer>> expected = collect(new Aggregate(
+                        new SeqScan(tid, table1.getId(), "t"), 2, group, op));
+                SystemTestUtil.matchTuples(new BatchDbIterator(
+                        new BatchAggregate(new BatchFilter(
+                                new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(-1)),
+                                scan(table1, 50)), 2, group, op, 10)), expected);
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchIteratorTest.class);
+    }
+}
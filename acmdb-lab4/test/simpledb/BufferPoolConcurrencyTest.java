@@ -0,0 +1,132 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolConcurrencyTest extends SimpleDbTestBase {
+
+    private static final int THREADS = 8;
+
+    /**
+     * Several transactions scan a table larger than the buffer pool at the
+     * same time; each of them has to see every tuple exactly once.
+     */
+    @Test public void concurrentScans() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 40, null, null);
+        Database.resetBufferPool(32);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final int[] counts = new int[THREADS];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int id = i;
+            threads.add(new Thread(() -> {
+                TransactionId tid = new TransactionId();
+                try {
+                    DbFileIterator it = hf.iterator(tid);
+                    it.open();
+                    while (it.hasNext()) {
+                        it.next();
+                        counts[id]++;
+                    }
+                    it.close();
+                    Database.getBufferPool().transactionComplete(tid);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        for (int count : counts) {
+            assertEquals(504 * 40, count);
+        }
+    }
+
+    /**
+     * Hits on a sharded pool return the cached page object.
+     */
+    @Test public void shardedHits() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 100, null, null);
+        BufferPool bp = Database.resetBufferPool(256);
+        TransactionId tid = new TransactionId();
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < hf.numPages(); i++) {
+            pages.add(bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY));
+        }
+        for (int i = 0; i < hf.numPages(); i++) {
+            assertSame(pages.get(i), bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY));
+        }
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Pins taken and dropped without the shard latch race with evictions
+     * from another thread: a pinned page is never evicted, and no pin is
+     * lost or left behind.
+     */
+    @Test public void pinsRaceEvictions() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, null);
+        BufferPool bp = Database.resetBufferPool(4);
+        HeapPageId hot = new HeapPageId(hf.getId(), 0);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final boolean evicting = i == 0;
+            threads.add(new Thread(() -> {
+                TransactionId tid = new TransactionId();
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        if (evicting) {
+                            for (int pgNo = 1; pgNo < hf.numPages(); pgNo++) {
+                                bp.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+                            }
+                        } else {
+                            Page page = bp.pinPage(tid, hot, Permissions.READ_ONLY);
+                            assertSame(page, bp.cachedPage(hot));
+                            bp.unpinPage(tid, hot);
+                        }
+                    }
+                    bp.transactionComplete(tid);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, bp.stats().getPinnedFrames());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolConcurrencyTest.class);
+    }
+}
@@ -0,0 +1,80 @@
+package simpledb;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static simpledb.systemtest.SystemTestUtil.pid;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolPinTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(20);
+        bp = Database.resetBufferPool(4);
+        tid = new TransactionId();
+    }
+
+    /**
+     * A pinned page stays resident however many other pages are read.
+     */
+    @Test public void pinnedPageNotEvicted() throws Exception {
+        Page pinned = bp.pinPage(tid, pid(hf, 0), Permissions.READ_ONLY);
+        for (int i = 1; i < hf.numPages(); i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        assertSame(pinned, bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY));
+        bp.unpinPage(tid, pid(hf, 0));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Once every frame is pinned, further misses fail cleanly; unpinning a
+     * page makes room again.
+     */
+    @Test public void pinExhaustion() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            bp.pinPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        try {
+            bp.getPage(tid, pid(hf, 4), Permissions.READ_ONLY);
+            fail("expected DbException since all pages are pinned");
+        } catch (DbException e) {
+            // expected
+        }
+        bp.unpinPage(tid, pid(hf, 2));
+        bp.getPage(tid, pid(hf, 4), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Pins a transaction still holds are released when it completes.
+     */
+    @Test public void pinsReleasedOnComplete() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            bp.pinPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(tid);
+        TransactionId other = new TransactionId();
+        for (int i = 4; i < hf.numPages(); i++) {
+            bp.getPage(other, pid(hf, i), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(other);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPinTest.class);
+    }
+}
@@ -0,0 +1,97 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static simpledb.systemtest.SystemTestUtil.pid;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolPreloadTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private File hotPages;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(8);
+        hotPages = File.createTempFile("hotpages", ".dat");
+        hotPages.deleteOnExit();
+    }
+
+    private Page awaitCached(BufferPool bp, PageId pid) throws InterruptedException {
+        for (int i = 0; i < 100 && bp.cachedPage(pid) == null; i++) {
+            Thread.sleep(10);
+        }
+        return bp.cachedPage(pid);
+    }
+
+    /**
+     * Saved pages are read back into a new pool.
+     */
+    @Test public void saveAndPreload() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 8; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(tid);
+        bp.saveHotPages(hotPages);
+
+        bp = Database.resetBufferPool(8);
+        assertEquals(8, bp.preloadPages(hotPages));
+        for (int i = 0; i < 8; i++) {
+            assertNotNull(awaitCached(bp, pid(hf, i)));
+        }
+    }
+
+    /**
+     * A smaller pool only gets the hottest pages.
+     */
+    @Test public void hottestFirst() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 8; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        bp.getPage(tid, pid(hf, 2), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(hf, 5), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        bp.saveHotPages(hotPages);
+
+        bp = Database.resetBufferPool(2);
+        assertEquals(2, bp.preloadPages(hotPages));
+        assertNotNull(awaitCached(bp, pid(hf, 2)));
+        assertNotNull(awaitCached(bp, pid(hf, 5)));
+        assertNull(bp.cachedPage(pid(hf, 0)));
+    }
+
+    /**
+     * Pages of tables that no longer exist are skipped.
+     */
+    @Test public void unknownTable() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        bp.saveHotPages(hotPages);
+
+        Database.getCatalog().clear();
+        bp = Database.resetBufferPool(8);
+        assertEquals(0, bp.preloadPages(hotPages));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPreloadTest.class);
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static simpledb.systemtest.SystemTestUtil.pid;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolReadAheadTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(40);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Sequential requests read the following pages ahead, in a window that
+     * grows while the scan goes on.
+     */
+    @Test public void sequentialHeapScan() throws Exception {
+        BufferPool bp = Database.resetBufferPool(64);
+        for (int i = 0; i < 4; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        // pages 2-5 after the second request, 6-11 after the fourth
+        assertNotNull(bp.cachedPage(pid(hf, 5)));
+        assertNotNull(bp.cachedPage(pid(hf, 11)));
+        assertNull(bp.cachedPage(pid(hf, 12)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A page read ahead and then requested once counts as referenced once,
+     * like a page read on demand, so that LRU-2 does not take it for hot.
+     */
+    @Test public void readAheadIsNotAReference() throws Exception {
+        Map<PageId, Integer> references = new HashMap<>();
+        BufferPool bp = new BufferPool(64, capacity -> new LruKEvictionPolicy() {
+            @Override
+            public void pageAccessed(PageId pid) {
+                references.merge(pid, 1, Integer::sum);
+                super.pageAccessed(pid);
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        // replay the buffered hits into the policy
+        File f = File.createTempFile("hotpages", ".dat");
+        f.deleteOnExit();
+        bp.saveHotPages(f);
+        // pages 0 and 1 were read on demand, 2 and 3 ahead
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(1), references.get(pid(hf, i)));
+        }
+        bp.transactionComplete(tid);
+        bp.shutdown();
+    }
+
+    /**
+     * Pages requested out of order are not read ahead.
+     */
+    @Test public void randomAccess() throws Exception {
+        BufferPool bp = Database.resetBufferPool(64);
+        bp.getPage(tid, pid(hf, 5), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(hf, 9), Permissions.READ_ONLY);
+        assertNull(bp.cachedPage(pid(hf, 1)));
+        assertNull(bp.cachedPage(pid(hf, 10)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Small pools do not read ahead at all.
+     */
+    @Test public void smallPool() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8);
+        for (int i = 0; i < 4; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        assertNull(bp.cachedPage(pid(hf, 4)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A scan sees every tuple exactly once while pages are read ahead.
+     */
+    @Test public void scanWithReadAhead() throws Exception {
+        Database.resetBufferPool(16);
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(504 * 40, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A B+ tree scan reads the right siblings of the leaves it visits ahead.
+     */
+    @Test public void leafChain() throws Exception {
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 502 * 20, null, null, 0);
+        BufferPool bp = Database.resetBufferPool(64);
+
+        // list the leaves without going through the buffer pool
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) bf.readPage(BTreeRootPtrPage.getId(bf.getId()));
+        BTreePageId pid = rootPtr.getRootId();
+        while (pid.pgcateg() == BTreePageId.INTERNAL) {
+            BTreeInternalPage internal = (BTreeInternalPage) bf.readPage(pid);
+            pid = internal.iterator().next().getLeftChild();
+        }
+        List<BTreePageId> leaves = new ArrayList<>();
+        for (; pid != null; pid = ((BTreeLeafPage) bf.readPage(pid)).getRightSiblingId()) {
+            leaves.add(pid);
+        }
+
+        for (int i = 0; i < 2; i++) {
+            bp.readAheadLeaves(tid, (BTreeLeafPage) bp.getPage(tid, leaves.get(i), Permissions.READ_ONLY));
+        }
+        // leaves 2-5 are read in the background
+        for (int i = 0; i < 100 && bp.cachedPage(leaves.get(5)) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(bp.cachedPage(leaves.get(5)));
+        assertNull(bp.cachedPage(leaves.get(10)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolReadAheadTest.class);
+    }
+}
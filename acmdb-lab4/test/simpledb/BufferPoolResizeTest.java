@@ -0,0 +1,106 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static simpledb.systemtest.SystemTestUtil.pid;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolResizeTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(8);
+        bp = Database.resetBufferPool(4);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Growing keeps the cached pages and makes room for more.
+     */
+    @Test public void grow() throws Exception {
+        Page first = bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY);
+        Database.resizeBufferPool(8);
+        assertEquals(8, bp.getNumPages());
+        for (int i = 1; i < 8; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        assertEquals(0, bp.stats().getTotal().getEvictions());
+        assertEquals(8, bp.stats().getResidentFrames());
+        assertSame(first, bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Shrinking evicts pages down to the new size right away.
+     */
+    @Test public void shrink() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        Database.resizeBufferPool(2);
+        assertEquals(2, bp.stats().getResidentFrames());
+        for (int i = 4; i < 8; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        assertEquals(2, bp.stats().getResidentFrames());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Shrinking leaves the dirty pages of running transactions alone instead
+     * of writing them back; the pool shrinks once they are gone.
+     */
+    @Test public void shrinkWithDirtyPages() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            HeapPage page = (HeapPage) bp.getPage(tid, pid(hf, i), Permissions.READ_WRITE);
+            bp.deleteTuple(tid, page.iterator().next());
+        }
+        bp.getPage(tid, pid(hf, 2), Permissions.READ_ONLY);
+        Database.resizeBufferPool(1);
+        assertEquals(2, bp.stats().getResidentFrames());
+        assertEquals(0, bp.stats().getTotal().getFlushes());
+        bp.transactionComplete(tid, false);
+
+        TransactionId reader = new TransactionId();
+        HeapPage reread = (HeapPage) bp.getPage(reader, pid(hf, 0), Permissions.READ_ONLY);
+        assertEquals(0, reread.getNumEmptySlots());
+        assertEquals(1, bp.stats().getResidentFrames());
+        bp.transactionComplete(reader);
+    }
+
+    /**
+     * Pinned pages stay until they are unpinned; the pool shrinks as frames
+     * are needed afterwards.
+     */
+    @Test public void shrinkBelowPinned() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            bp.pinPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        Database.resizeBufferPool(1);
+        assertEquals(3, bp.stats().getResidentFrames());
+        bp.transactionComplete(tid);
+
+        TransactionId other = new TransactionId();
+        assertNotNull(bp.getPage(other, pid(hf, 5), Permissions.READ_ONLY));
+        assertEquals(1, bp.stats().getResidentFrames());
+        bp.transactionComplete(other);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolResizeTest.class);
+    }
+}
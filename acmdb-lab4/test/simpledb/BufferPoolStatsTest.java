@@ -0,0 +1,97 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static simpledb.systemtest.SystemTestUtil.pid;
+import junit.framework.JUnit4TestAdapter;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolStatsTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(6);
+        // too small to read ahead, so that every read is a miss
+        bp = Database.resetBufferPool(4);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Hits, misses and evictions are counted in total, per table and per
+     * page category.
+     */
+    @Test public void hitsMissesEvictions() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            bp.getPage(tid, pid(hf, i), Permissions.READ_ONLY);
+        }
+        bp.getPage(tid, pid(hf, 5), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+
+        BufferPoolStats stats = bp.stats();
+        assertEquals(1, stats.getTotal().getHits());
+        assertEquals(6, stats.getTotal().getMisses());
+        assertEquals(2, stats.getTotal().getEvictions());
+        assertEquals(6L * BufferPool.getPageSize(), stats.getTotal().getBytesRead());
+        assertEquals(1.0 / 7, stats.getTotal().getHitRatio(), 1e-9);
+        assertEquals(6, stats.getByTable().get(hf.getId()).getMisses());
+        assertEquals(6, stats.getByCategory().get("heap").getMisses());
+        assertEquals(0, stats.getByCategory().get("leaf").getMisses());
+        assertEquals(4, stats.getResidentFrames());
+        assertEquals(4, stats.getCapacity());
+    }
+
+    /**
+     * Dirty and pinned frames are reported, and flushes are counted on
+     * commit.
+     */
+    @Test public void dirtyPinnedFlushed() throws Exception {
+        bp.pinPage(tid, pid(hf, 1), Permissions.READ_ONLY);
+        HeapPage page = (HeapPage) bp.getPage(tid, pid(hf, 0), Permissions.READ_WRITE);
+        bp.deleteTuple(tid, page.iterator().next());
+
+        BufferPoolStats stats = bp.stats();
+        assertEquals(1, stats.getDirtyFrames());
+        assertEquals(1, stats.getPinnedFrames());
+        assertEquals(0, stats.getTotal().getFlushes());
+
+        bp.transactionComplete(tid);
+        stats = bp.stats();
+        assertEquals(0, stats.getDirtyFrames());
+        assertEquals(0, stats.getPinnedFrames());
+        assertEquals(1, stats.getTotal().getFlushes());
+        assertEquals(BufferPool.getPageSize(), stats.getTotal().getBytesWritten());
+    }
+
+    /**
+     * The counters of the current pool are published through JMX.
+     */
+    @Test public void jmx() throws Exception {
+        bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(hf, 0), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        ObjectName name = new ObjectName(BufferPoolMonitor.OBJECT_NAME);
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Hits"));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Misses"));
+        assertEquals(4, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Capacity"));
+        ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Stats");
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolStatsTest.class);
+    }
+}
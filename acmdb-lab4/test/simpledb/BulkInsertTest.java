@@ -0,0 +1,101 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BulkInsertTest extends SimpleDbTestBase {
+
+    private static int insert(TransactionId tid, HeapFile source, HeapFile destination) throws Exception {
+        Insert insert = new Insert(tid, new SeqScan(tid, source.getId(), ""), destination.getId());
+        insert.open();
+        int count = ((IntField) insert.next().getField(0)).getValue();
+        insert.close();
+        return count;
+    }
+
+    /**
+     * Tuples bulk-inserted into an empty file are packed into new pages,
+     * logged, and read back after commit.
+     */
+    @Test public void emptyTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 504 * 70 + 10, null, tuples);
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(2, 0, null, null);
+        assertTrue(destination.isAppendOnly());
+        int pages = destination.numPages();
+
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, source.getId(), "");
+        scan.open();
+        int records = Database.getLogFile().getTotalRecords();
+        assertEquals(504 * 70 + 10, destination.bulkInsert(tid, scan));
+        scan.close();
+        assertEquals(pages + 71, destination.numPages());
+        // every appended page is logged before it is written
+        assertEquals(records + 71, Database.getLogFile().getTotalRecords());
+        SystemTestUtil.matchTuples(destination, tid, tuples);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(destination, tuples);
+        assertTrue(destination.hasFreeSpace());
+    }
+
+    /**
+     * Insert fills the last page through the buffer pool and appends the rest
+     * in bulk, which leaves the pool alone.
+     */
+    @Test public void insertSwitchesToBulk() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, tuples);
+        ArrayList<ArrayList<Integer>> existing = new ArrayList<>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(2, 504 + 500, null, existing);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        TransactionId tid = new TransactionId();
+        assertEquals(504 * 20, insert(tid, source, destination));
+        // the last page of the destination, filled through the pool
+        assertEquals(1, bp.stats().getDirtyFrames());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // 4 tuples fit into the last page, leaving 4 free slots at the end
+        assertEquals(22, destination.numPages());
+        assertTrue(destination.hasFreeSpace());
+        assertTrue(destination.isAppendOnly());
+        tuples.addAll(existing);
+        SystemTestUtil.matchTuples(destination, tuples);
+    }
+
+    /**
+     * Aborting a bulk insert leaves the appended pages empty, and they are
+     * locked until then.
+     */
+    @Test public void abort() throws Exception {
+        ArrayList<ArrayList<Integer>> existing = new ArrayList<>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(2, 504, null, existing);
+
+        TransactionId tid = new TransactionId();
+        assertEquals(504 * 3, insert(tid, source, destination));
+        assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(destination.getId(), 2)));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(destination, existing);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkInsertTest.class);
+    }
+}
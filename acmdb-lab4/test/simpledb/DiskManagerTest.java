@@ -0,0 +1,128 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.NoSuchFileException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class DiskManagerTest extends SimpleDbTestBase {
+
+    private DiskManager dm;
+    private File f;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        dm = new DiskManager();
+        f = File.createTempFile("diskmanager", ".dat");
+        f.deleteOnExit();
+    }
+
+    @After public void tearDown() {
+        dm.closeAll();
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        java.util.Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    /**
+     * Positional writes land where they are asked to and grow the file.
+     */
+    @Test public void writeThenRead() throws Exception {
+        dm.write(f, 100, bytes(50, 7));
+        dm.write(f, 0, bytes(10, 3));
+        assertEquals(150, f.length());
+
+        byte[] buf = new byte[50];
+        assertEquals(50, dm.read(f, 100, buf));
+        assertArrayEquals(bytes(50, 7), buf);
+        buf = new byte[10];
+        assertEquals(10, dm.read(f, 0, buf));
+        assertArrayEquals(bytes(10, 3), buf);
+    }
+
+    /**
+     * Reads that cross the end of the file are short, and reads past it
+     * return -1.
+     */
+    @Test public void readPastEnd() throws Exception {
+        dm.write(f, 0, bytes(20, 1));
+        assertEquals(10, dm.read(f, 10, new byte[20]));
+        assertEquals(-1, dm.read(f, 20, new byte[20]));
+    }
+
+    /**
+     * Reads of a missing file fail without creating it; writes create it.
+     */
+    @Test public void missingFile() throws Exception {
+        assertTrue(f.delete());
+        try {
+            dm.read(f, 0, new byte[10]);
+            fail("expected NoSuchFileException");
+        } catch (NoSuchFileException e) {
+            // expected
+        }
+        try {
+            dm.readMapped(f, 0, new byte[10]);
+            fail("expected NoSuchFileException");
+        } catch (NoSuchFileException e) {
+            // expected
+        }
+        assertFalse(f.exists());
+        dm.write(f, 0, bytes(10, 2));
+        assertEquals(10, f.length());
+    }
+
+    /**
+     * Closed channels are reopened on the next access.
+     */
+    @Test public void reopen() throws Exception {
+        dm.write(f, 0, bytes(20, 5));
+        dm.closeAll();
+        byte[] buf = new byte[20];
+        assertEquals(20, dm.read(f, 0, buf));
+        assertArrayEquals(bytes(20, 5), buf);
+    }
+
+    /**
+     * An interrupted thread fails, but does not break the file for other
+     * threads.
+     */
+    @Test public void interrupt() throws Exception {
+        dm.write(f, 0, bytes(20, 9));
+        Thread.currentThread().interrupt();
+        boolean failed = false;
+        try {
+            dm.read(f, 0, new byte[20]);
+        } catch (ClosedByInterruptException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+        assertTrue(Thread.interrupted());
+
+        byte[] buf = new byte[20];
+        assertEquals(20, dm.read(f, 0, buf));
+        assertArrayEquals(bytes(20, 9), buf);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DiskManagerTest.class);
+    }
+}
@@ -0,0 +1,81 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(-1, pgNo);
+    }
+
+    /**
+     * Keep one hot page in a cache of the given size and access it again
+     * every half cache worth of accesses, while scanning through many pages
+     * that are only read once. The hot page should never be chosen as victim.
+     */
+    private void checkScanResistant(EvictionPolicy policy, int capacity) {
+        PageId hot = pid(0);
+        policy.pageAdded(hot);
+        policy.pageAccessed(hot);
+        policy.pageAccessed(hot);
+        int resident = 1;
+        for (int i = 1; i < 10 * capacity; i++) {
+            if (resident >= capacity) {
+                PageId victim = policy.evict(p -> true);
+                assertFalse(hot.equals(victim));
+                resident--;
+            }
+            policy.pageAdded(pid(i));
+            resident++;
+            if (i % (capacity / 2) == 0) {
+                policy.pageAccessed(hot);
+            }
+        }
+    }
+
+    @Test public void clockScanResistant() {
+        checkScanResistant(new ClockEvictionPolicy(), 8);
+    }
+
+    @Test public void lruKScanResistant() {
+        checkScanResistant(new LruKEvictionPolicy(), 8);
+    }
+
+    @Test public void arcScanResistant() {
+        checkScanResistant(new ArcEvictionPolicy(8), 8);
+    }
+
+    /**
+     * Pages rejected by the predicate are never evicted, and removed pages
+     * are forgotten.
+     */
+    @Test public void respectsPredicate() {
+        EvictionPolicy[] policies = {
+                new ClockEvictionPolicy(), new LruKEvictionPolicy(), new ArcEvictionPolicy(4)
+        };
+        for (EvictionPolicy policy : policies) {
+            policy.pageAdded(pid(1));
+            policy.pageAdded(pid(2));
+            policy.pageAdded(pid(3));
+            policy.pageRemoved(pid(3));
+            assertEquals(pid(2), policy.evict(p -> p.pageNumber() == 2));
+            assertNull(policy.evict(p -> p.pageNumber() != 1));
+            assertEquals(pid(1), policy.evict(p -> true));
+            assertNull(policy.evict(p -> true));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,114 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // ten full pages
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 10, null, null);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    private void deleteFromPage(int pgNo) throws Exception {
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(
+                tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private int insert() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(1, 2);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        return t.getRecordId().getPageId().pageNumber();
+    }
+
+    /**
+     * An insert goes straight to the page that has room, without reading the
+     * full pages before it.
+     */
+    @Test public void insertFindsFreePage() throws Exception {
+        deleteFromPage(7);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(7, insert());
+        assertEquals(1, bp.stats().getTotal().getMisses());
+    }
+
+    /**
+     * The map follows inserts and deletes: a page that fills up is skipped and
+     * a new page is added when none has room.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        deleteFromPage(3);
+        assertEquals(3, insert());
+        assertEquals(10, insert());
+        assertEquals(11, hf.numPages());
+        deleteFromPage(2);
+        assertEquals(2, insert());
+        assertEquals(10, insert());
+    }
+
+    /**
+     * A saved map is used when the file is opened again, and ignored once
+     * the file has grown.
+     */
+    @Test public void saveAndLoad() throws Exception {
+        deleteFromPage(5);
+        insert();
+        deleteFromPage(5);
+        hf.saveFreeSpaceMap();
+        File sideFile = new File(hf.getFile().getPath() + ".fsm");
+        sideFile.deleteOnExit();
+        assertTrue(sideFile.exists());
+
+        hf = Utility.openHeapFile(2, hf.getFile());
+        assertEquals(5, insert());
+
+        // the file grows, so the saved map, which has page 5 free, no
+        // longer fits it
+        assertEquals(10, insert());
+        hf = Utility.openHeapFile(2, hf.getFile());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(10, insert());
+    }
+
+    /**
+     * Pages read from the file report deletes to its map; pages built
+     * without the map, like this copy, do not.
+     */
+    @Test public void onlyPagesOfTheFileReport() throws Exception {
+        assertFalse(hf.hasFreeSpace());
+        HeapPageId pid = new HeapPageId(hf.getId(), 4);
+        HeapPage copy = new HeapPage(pid, hf.readPage(pid).getPageData());
+        copy.deleteTuple(copy.iterator().next());
+        assertFalse(hf.hasFreeSpace());
+
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        page.deleteTuple(page.iterator().next());
+        assertTrue(hf.hasFreeSpace());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
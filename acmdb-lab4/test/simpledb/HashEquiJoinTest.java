@@ -135,6 +135,100 @@ public class HashEquiJoinTest extends SimpleDbTestBase {
       validateJoin(1,10,1,30001);
   }
 
+  private static ArrayList<ArrayList<Integer>> expectedJoin(ArrayList<ArrayList<Integer>> t1Tuples,
+      ArrayList<ArrayList<Integer>> t2Tuples) {
+    ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+    for (ArrayList<Integer> t1 : t1Tuples) {
+      for (ArrayList<Integer> t2 : t2Tuples) {
+        if (t1.get(0).equals(t2.get(0))) {
+          ArrayList<Integer> out = new ArrayList<Integer>(t1);
+          out.addAll(t2);
+          expected.add(out);
+        }
+      }
+    }
+    return expected;
+  }
+
+  /**
+   * Unit test for a join whose left relation does not fit into memory, so
+   * that both relations are partitioned into spill files
+   */
+  @Test public void spillJoin() throws Exception {
+    ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, 3000, 1000, null, t1Tuples);
+    ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, 2000, 1000, null, t2Tuples);
+    ArrayList<ArrayList<Integer>> expected = expectedJoin(t1Tuples, t2Tuples);
+
+    TransactionId tid = new TransactionId();
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin joinOp = new HashEquiJoin(p, new SeqScan(tid, table1.getId(), ""),
+        new SeqScan(tid, table2.getId(), ""));
+    joinOp.setMemoryPages(1);
+    SystemTestUtil.matchTuples(joinOp, expected);
+
+    // rewinding in the middle of the spilled partitions starts over
+    joinOp.open();
+    for (int i = 0; i < expected.size() - 10; i++) {
+      joinOp.next();
+    }
+    joinOp.rewind();
+    int cnt = 0;
+    while (joinOp.hasNext()) {
+      joinOp.next();
+      cnt++;
+    }
+    joinOp.close();
+    assertEquals(expected.size(), cnt);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Unit test for repartitioning: the keys of one partition are spread
+   * over many partitions of the next level
+   */
+  @Test public void repartition() {
+    int fanout = HashEquiJoin.MAX_FANOUT;
+    for (int depth = 0; depth + 1 < HashEquiJoin.MAX_DEPTH; depth++) {
+      int[] counts = new int[fanout];
+      int keys = 0;
+      for (int k = 0; k < 100000; k++) {
+        IntField key = new IntField(k);
+        if (HashEquiJoin.partitionOf(key, depth, fanout) == 5) {
+          counts[HashEquiJoin.partitionOf(key, depth + 1, fanout)]++;
+          keys++;
+        }
+      }
+      // roughly even: no sub-partition gets more than twice its share
+      for (int count : counts) {
+        assertTrue(count > 0);
+        assertTrue(count < 2 * keys / fanout);
+      }
+    }
+  }
+
+  /**
+   * Unit test for a spilling join where all tuples have the same key, so
+   * that partitioning again does not help
+   */
+  @Test public void skewedJoin() throws Exception {
+    HashMap<Integer, Integer> columnSpecification = new HashMap<Integer, Integer>();
+    columnSpecification.put(0, 1);
+    ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, 1000, columnSpecification, t1Tuples);
+    ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+    HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, 5, columnSpecification, t2Tuples);
+
+    TransactionId tid = new TransactionId();
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin joinOp = new HashEquiJoin(p, new SeqScan(tid, table1.getId(), ""),
+        new SeqScan(tid, table2.getId(), ""));
+    joinOp.setMemoryPages(1);
+    SystemTestUtil.matchTuples(joinOp, expectedJoin(t1Tuples, t2Tuples));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
   /**
    * JUnit suite target
    */
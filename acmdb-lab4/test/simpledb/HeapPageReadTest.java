@@ -12,6 +12,9 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -120,6 +123,36 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getTuple()
+     */
+    @Test public void getTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Tuple tup = page.getTuple(7);
+        assertEquals(EXAMPLE_VALUES[7][0], ((IntField) tup.getField(0)).getValue());
+        assertEquals(EXAMPLE_VALUES[7][1], ((IntField) tup.getField(1)).getValue());
+        assertEquals(7, tup.getRecordId().tupleno());
+        assertSame(tup, page.getTuple(7));
+        assertNull(page.getTuple(20));
+    }
+
+    /**
+     * An unchanged page hands out the data it was read from; a changed one
+     * serializes itself again.
+     */
+    @Test public void getPageDataSharedWhileClean() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        assertSame(EXAMPLE_DATA, page.getPageData());
+
+        page.deleteTuple(page.getTuple(3));
+        byte[] data = page.getPageData();
+        assertNotSame(EXAMPLE_DATA, data);
+        assertSame(data, page.getPageData());
+        HeapPage reread = new HeapPage(pid, data);
+        assertFalse(reread.isSlotUsed(3));
+        assertEquals(EXAMPLE_VALUES[4][0], ((IntField) reread.getTuple(4).getField(0)).getValue());
+    }
+
     /**
      * JUnit suite target
      */
@@ -125,6 +125,41 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Slots spread over several header words are found, iterated and
+     * written back in the same places.
+     */
+    @Test public void sparseSlots() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        int numSlots = page.getNumEmptySlots();
+        assertTrue(numSlots > 128);
+        for (int i = 0; i < numSlots; i++) {
+            page.insertTuple(Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(0, page.getNumEmptySlots());
+
+        // keep only slots 63, 64 and the last one
+        for (int i = 0; i < numSlots; i++) {
+            if (i != 63 && i != 64 && i != numSlots - 1) {
+                page.deleteTuple(page.getTuple(i));
+            }
+        }
+        assertEquals(numSlots - 3, page.getNumEmptySlots());
+
+        HeapPage reread = new HeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = reread.iterator();
+        for (int slot : new int[] {63, 64, numSlots - 1}) {
+            assertTrue(it.hasNext());
+            Tuple t = it.next();
+            assertEquals(slot, t.getRecordId().tupleno());
+            assertEquals(slot, t.getInt(0));
+        }
+        assertTrue(!it.hasNext());
+
+        reread.insertTuple(Utility.getHeapTuple(-1, 2));
+        assertTrue(reread.isSlotUsed(0));
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,132 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+    private static final Predicate.Op[] OPS = {
+            Predicate.Op.EQUALS, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ,
+            Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ};
+
+    private HeapFile outer;
+    private BTreeFile inner;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        outer = SystemTestUtil.createRandomHeapFile(2, 20, 60, null, null);
+        // enough rows for internal pages, and runs of each key across leaves
+        inner = BTreeUtility.createRandomBTreeFile(2, 5000, 50, null, null, 0);
+        tid = new TransactionId();
+    }
+
+    private static ArrayList<ArrayList<Integer>> collect(DbIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            result.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        it.close();
+        return result;
+    }
+
+    /**
+     * Every supported comparison gives the same tuples as a nested-loop
+     * join, and rewind starts over.
+     */
+    @Test public void join() throws Exception {
+        for (Predicate.Op op : OPS) {
+            JoinPredicate p = new JoinPredicate(1, op, 0);
+            ArrayList<ArrayList<Integer>> expected = collect(new Join(p,
+                    new SeqScan(tid, outer.getId(), "a"), new SeqScan(tid, inner.getId(), "b")));
+            IndexNestedLoopJoin join = new IndexNestedLoopJoin(p,
+                    new SeqScan(tid, outer.getId(), "a"), new SeqScan(tid, inner.getId(), "b"));
+            SystemTestUtil.matchTuples(join, expected);
+        }
+
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, outer.getId(), "a"), new SeqScan(tid, inner.getId(), "b"));
+        ArrayList<ArrayList<Integer>> first = collect(join);
+        join.open();
+        join.next();
+        join.rewind();
+        ArrayList<ArrayList<Integer>> second = new ArrayList<>();
+        while (join.hasNext()) {
+            second.add(SystemTestUtil.tupleToList(join.next()));
+        }
+        join.close();
+        assertEquals(first, second);
+    }
+
+    /**
+     * The cached upper levels lead to the same leaves as a search from the
+     * root.
+     */
+    @Test public void probeCache() throws Exception {
+        BTreeProbeCache cache = new BTreeProbeCache(inner, tid);
+        BTreePageId root = ((BTreeRootPtrPage) Database.getBufferPool().getPage(tid,
+                BTreeRootPtrPage.getId(inner.getId()), Permissions.READ_ONLY)).getRootId();
+        assertEquals(BTreePageId.INTERNAL, root.pgcateg());
+        for (int key = -1; key <= 51; key++) {
+            assertEquals(inner.findLeafPage(tid, root, Permissions.READ_ONLY, new IntField(key)).getId(),
+                    cache.findLeaf(new IntField(key)));
+        }
+        assertEquals(inner.findLeafPage(tid, root, Permissions.READ_ONLY, null).getId(),
+                cache.findLeaf(null));
+    }
+
+    /**
+     * Only scans of a B+ tree keyed on the join field can be probed, and the
+     * optimizer probes them for filtered outer sides, where they are cheaper
+     * than nested loops.
+     */
+    @Test public void optimizer() throws Exception {
+        SeqScan scan1 = new SeqScan(tid, outer.getId(), "t1");
+        SeqScan scan2 = new SeqScan(tid, inner.getId(), "t2");
+        assertTrue(IndexNestedLoopJoin.canProbe(scan2, 0, Predicate.Op.LESS_THAN));
+        assertFalse(IndexNestedLoopJoin.canProbe(scan2, 1, Predicate.Op.EQUALS));
+        assertFalse(IndexNestedLoopJoin.canProbe(scan2, 0, Predicate.Op.NOT_EQUALS));
+        assertFalse(IndexNestedLoopJoin.canProbe(scan1, 0, Predicate.Op.EQUALS));
+
+        HeapFile named1 = SystemTestUtil.createRandomHeapFile(2, 20, 60, null, null, "c");
+        File f = File.createTempFile("index", ".dat");
+        f.deleteOnExit();
+        BTreeFile named3 = BTreeUtility.openBTreeFile(2, "c", f, 0);
+        SeqScan outerScan = new SeqScan(tid, named1.getId(), "t1");
+        SeqScan innerScan = new SeqScan(tid, named3.getId(), "t3");
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(3)), outerScan);
+        LogicalJoinNode lj = new LogicalJoinNode("t1", "t3", "t1.c1", "t3.c0", Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, filter, innerScan) instanceof IndexNestedLoopJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, outerScan, innerScan) instanceof HashEquiJoin);
+
+        // the costs are those of the joins that instantiateJoin builds
+        LogicalPlan plan = new LogicalPlan();
+        plan.addScan(named1.getId(), "t1");
+        plan.addScan(named3.getId(), "t3");
+        JoinOptimizer jo = new JoinOptimizer(plan, new Vector<LogicalJoinNode>());
+        assertEquals(100 + 1000 + 10 + 5000, jo.estimateJoinCost(lj, 10, 5000, 100, 1000), 1e-9);
+        plan.addFilter("t1.c0", Predicate.Op.EQUALS, "3");
+        assertEquals(JoinOptimizer.estimateIndexJoinCost(Predicate.Op.EQUALS, 10, 5000, 100, 1000,
+                named3.numPages()), jo.estimateJoinCost(lj, 10, 5000, 100, 1000), 1e-9);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
@@ -105,6 +105,23 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * Unit test for Join.getNext() when neither input fits into memory, so
+   * that the outer input is joined block by block
+   */
+  @Test public void blockJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+    Join op = new Join(pred, scan1, scan2);
+    op.setMemoryPages(0);
+    op.open();
+    gtJoin.open();
+    TestUtil.matchAllTuples(gtJoin, op);
+
+    op.rewind();
+    gtJoin.rewind();
+    TestUtil.matchAllTuples(gtJoin, op);
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,114 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+    private LockManager lm;
+    private PageId p0;
+    private PageId p1;
+    private TransactionId tid1;
+    private TransactionId tid2;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        lm = new LockManager();
+        p0 = new HeapPageId(-1, 0);
+        p1 = new HeapPageId(-1, 1);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    /**
+     * Shared locks are compatible with each other
+     */
+    @Test public void sharedLocks() throws Exception {
+        lm.acquireLock(tid1, p0, Permissions.READ_ONLY);
+        lm.acquireLock(tid2, p0, Permissions.READ_ONLY);
+        assertTrue(lm.holdsLock(tid1, p0));
+        assertTrue(lm.holdsLock(tid2, p0));
+    }
+
+    /**
+     * The only reader of a page may upgrade its lock
+     */
+    @Test public void upgrade() throws Exception {
+        lm.acquireLock(tid1, p0, Permissions.READ_ONLY);
+        lm.acquireLock(tid1, p0, Permissions.READ_WRITE);
+        assertTrue(lm.holdsLock(tid1, p0));
+        lm.releaseAllLocks(tid1);
+        assertFalse(lm.holdsLock(tid1, p0));
+    }
+
+    /**
+     * A writer waits until the reader releases its lock
+     */
+    @Test public void exclusiveWaits() throws Exception {
+        lm.acquireLock(tid1, p0, Permissions.READ_ONLY);
+        Thread writer = new Thread(() -> {
+            try {
+                lm.acquireLock(tid2, p0, Permissions.READ_WRITE);
+            } catch (DeadlockException e) {
+                fail("unexpected deadlock");
+            }
+        });
+        writer.start();
+        writer.join(100);
+        assertTrue(writer.isAlive());
+        assertFalse(lm.holdsLock(tid2, p0));
+
+        lm.releaseLock(tid1, p0);
+        writer.join(1000);
+        assertFalse(writer.isAlive());
+        assertTrue(lm.holdsLock(tid2, p0));
+    }
+
+    /**
+     * Two transactions waiting on each other are detected as a deadlock
+     */
+    @Test public void deadlock() throws Exception {
+        lm.acquireLock(tid1, p0, Permissions.READ_WRITE);
+        lm.acquireLock(tid2, p1, Permissions.READ_WRITE);
+
+        final boolean[] aborted = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            try {
+                lm.acquireLock(tid1, p1, Permissions.READ_WRITE);
+            } catch (DeadlockException e) {
+                aborted[0] = true;
+            }
+        });
+        waiter.start();
+        waiter.join(100);
+        assertTrue(waiter.isAlive());
+
+        boolean detected = false;
+        try {
+            lm.acquireLock(tid2, p0, Permissions.READ_WRITE);
+        } catch (DeadlockException e) {
+            detected = true;
+            lm.releaseAllLocks(tid2);
+        }
+        waiter.join(1000);
+        assertTrue(detected);
+        assertFalse(aborted[0]);
+        assertTrue(lm.holdsLock(tid1, p1));
+        assertEquals(2, lm.getLockedPages(tid1).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
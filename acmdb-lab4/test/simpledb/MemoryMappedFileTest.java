@@ -0,0 +1,117 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MemoryMappedFileTest extends SimpleDbTestBase {
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    /**
+     * Reads that span segments are put together from both of them, and
+     * reads past the end of the file are short.
+     */
+    @Test public void acrossSegments() throws Exception {
+        File f = File.createTempFile("mapped", ".dat");
+        f.deleteOnExit();
+        DiskManager dm = new DiskManager(64);
+        dm.write(f, 0, bytes(64, 1));
+        dm.write(f, 64, bytes(64, 2));
+
+        byte[] buf = new byte[32];
+        assertEquals(32, dm.readMapped(f, 48, buf));
+        byte[] expected = bytes(32, 1);
+        Arrays.fill(expected, 16, 32, (byte) 2);
+        assertArrayEquals(expected, buf);
+        assertEquals(16, dm.readMapped(f, 112, buf));
+        assertEquals(-1, dm.readMapped(f, 128, buf));
+        dm.closeAll();
+    }
+
+    /**
+     * Data written after a segment was mapped is seen, including data that
+     * grows the file past the mapping.
+     */
+    @Test public void remapOnGrowth() throws Exception {
+        File f = File.createTempFile("mapped", ".dat");
+        f.deleteOnExit();
+        DiskManager dm = new DiskManager(64);
+        dm.write(f, 0, bytes(16, 1));
+        byte[] buf = new byte[16];
+        assertEquals(16, dm.readMapped(f, 0, buf));
+
+        dm.write(f, 0, bytes(16, 3));
+        dm.write(f, 16, bytes(100, 4));
+        assertEquals(16, dm.readMapped(f, 0, buf));
+        assertArrayEquals(bytes(16, 3), buf);
+        assertEquals(16, dm.readMapped(f, 100, buf));
+        assertArrayEquals(bytes(16, 4), buf);
+        dm.closeAll();
+    }
+
+    /**
+     * A mapped heap file reads the same tuples, also after inserts have
+     * appended pages.
+     */
+    @Test public void heapFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1000, null, tuples);
+        hf.setMemoryMapped(true);
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        TransactionId tid = new TransactionId();
+        int pages = hf.numPages();
+        for (int i = 0; i < 600; i++) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            t.setField(0, new IntField(i));
+            t.setField(1, new IntField(-i));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            tuples.add(new ArrayList<>(Arrays.asList(i, -i)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertTrue(hf.numPages() > pages);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * A mapped B+ tree keeps working while it splits and allocates pages.
+     */
+    @Test public void btreeFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 1000, null, tuples, 0);
+        bf.setMemoryMapped(true);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = BTreeUtility.getBTreeTuple(new int[] {i, i});
+            Database.getBufferPool().insertTuple(tid, bf.getId(), t);
+            tuples.add(new ArrayList<>(Arrays.asList(i, i)));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(bf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MemoryMappedFileTest.class);
+    }
+}
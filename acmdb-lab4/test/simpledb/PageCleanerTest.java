@@ -0,0 +1,116 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageCleanerTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Delete every tuple of the first page on behalf of tid.
+     */
+    private HeapPage emptyFirstPage() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        java.util.Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            bp.deleteTuple(tid, it.next());
+        }
+        return page;
+    }
+
+    private int emptySlotsOnDisk() {
+        return ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0))).getNumEmptySlots();
+    }
+
+    /**
+     * Cleaned pages are written and become clean; an abort restores them.
+     */
+    @Test public void abortRestoresCleanedPages() throws Exception {
+        HeapPage page = emptyFirstPage();
+        bp.cleanPages(1.0);
+        assertNull(page.isDirty());
+        assertEquals(504, emptySlotsOnDisk());
+
+        bp.transactionComplete(tid, false);
+        assertEquals(0, emptySlotsOnDisk());
+        TransactionId reader = new TransactionId();
+        HeapPage reread = (HeapPage) bp.getPage(reader, page.getId(), Permissions.READ_ONLY);
+        assertEquals(0, reread.getNumEmptySlots());
+        bp.transactionComplete(reader);
+    }
+
+    /**
+     * A page of a running transaction is logged before it is written.
+     */
+    @Test public void cleaningIsLogged() throws Exception {
+        emptyFirstPage();
+        int records = Database.getLogFile().getTotalRecords();
+        bp.cleanPages(1.0);
+        assertEquals(records + 1, Database.getLogFile().getTotalRecords());
+        bp.transactionComplete(tid, false);
+    }
+
+    /**
+     * Cleaned pages of a committed transaction stay on disk.
+     */
+    @Test public void commitKeepsCleanedPages() throws Exception {
+        emptyFirstPage();
+        bp.cleanPages(1.0);
+        bp.transactionComplete(tid, true);
+        assertEquals(504, emptySlotsOnDisk());
+    }
+
+    /**
+     * Nothing is written while enough frames are clean.
+     */
+    @Test public void respectsTarget() throws Exception {
+        HeapPage page = emptyFirstPage();
+        bp.cleanPages(0.5);
+        assertEquals(tid, page.isDirty());
+        assertEquals(0, emptySlotsOnDisk());
+        bp.transactionComplete(tid, false);
+    }
+
+    /**
+     * The background thread cleans pages on its own.
+     */
+    @Test public void backgroundCleaner() throws Exception {
+        HeapPage page = emptyFirstPage();
+        bp.startPageCleaner(10, 1.0);
+        try {
+            for (int i = 0; i < 100 && page.isDirty() != null; i++) {
+                Thread.sleep(10);
+            }
+        } finally {
+            bp.stopPageCleaner();
+        }
+        assertNull(page.isDirty());
+        bp.transactionComplete(tid, false);
+        assertEquals(0, emptySlotsOnDisk());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCleanerTest.class);
+    }
+}
@@ -0,0 +1,130 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ScanRingTest extends SimpleDbTestBase {
+
+    /**
+     * Only files that do not fit into the pool are scanned through a ring.
+     */
+    @Test public void trigger() throws Exception {
+        BufferPool bp = Database.resetBufferPool(64);
+        assertNull(bp.scanRing(64));
+        assertNotNull(bp.scanRing(65));
+    }
+
+    /**
+     * A large scan keeps to its ring and leaves the pages other transactions
+     * use in the pool.
+     */
+    @Test public void hotPagesSurviveLargeScan() throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 150, null, null);
+        BufferPool bp = Database.resetBufferPool(64);
+
+        TransactionId reader = new TransactionId();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < hot.numPages(); i++) {
+                bp.getPage(reader, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+            }
+        }
+        bp.transactionComplete(reader);
+
+        TransactionId scanner = new TransactionId();
+        DbFileIterator it = big.iterator(scanner);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        bp.transactionComplete(scanner);
+        assertEquals(504 * 150, count);
+
+        for (int i = 0; i < hot.numPages(); i++) {
+            assertNotNull(bp.cachedPage(new HeapPageId(hot.getId(), i)));
+        }
+        int cached = 0;
+        for (int i = 0; i < big.numPages(); i++) {
+            if (bp.cachedPage(new HeapPageId(big.getId(), i)) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 32);
+    }
+
+    /**
+     * Full scans and range scans of a large B+ tree also keep their leaves
+     * to a ring.
+     */
+    @Test public void hotPagesSurviveLargeTreeScan() throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        BTreeFile big = BTreeUtility.createRandomBTreeFile(2, 502 * 150, null, null, 0);
+        IndexPredicate range = new IndexPredicate(Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0));
+        DbFileIterator[] scans = {
+                big.iterator(new TransactionId()), big.indexIterator(new TransactionId(), range) };
+        for (DbFileIterator it : scans) {
+            BufferPool bp = Database.resetBufferPool(64);
+            TransactionId reader = new TransactionId();
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < hot.numPages(); i++) {
+                    bp.getPage(reader, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+                }
+            }
+            bp.transactionComplete(reader);
+
+            it.open();
+            int count = 0;
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            it.close();
+            assertEquals(502 * 150, count);
+
+            // read-ahead may still be finishing a batch of leaves
+            bp.shutdown();
+            int cached = cachedLeaves(bp, big);
+            for (int i = 0; i < 100; i++) {
+                Thread.sleep(10);
+                int now = cachedLeaves(bp, big);
+                if (now == cached) {
+                    break;
+                }
+                cached = now;
+            }
+            for (int i = 0; i < hot.numPages(); i++) {
+                assertNotNull(bp.cachedPage(new HeapPageId(hot.getId(), i)));
+            }
+            // the ring, and the first leaf, read by the descent from the root
+            assertTrue(cached <= 32 + 1);
+        }
+    }
+
+    private static int cachedLeaves(BufferPool bp, BTreeFile f) {
+        int cached = 0;
+        for (int i = 1; i <= f.numPages(); i++) {
+            if (bp.cachedPage(new BTreePageId(f.getId(), i, BTreePageId.LEAF)) != null) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ScanRingTest.class);
+    }
+}
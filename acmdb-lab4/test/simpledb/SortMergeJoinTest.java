@@ -0,0 +1,157 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private static final Predicate.Op[] OPS = {
+            Predicate.Op.EQUALS, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ,
+            Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ};
+
+    private HeapFile table1;
+    private HeapFile table2;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // few distinct values, so that there are long runs of duplicates
+        table1 = SystemTestUtil.createRandomHeapFile(2, 100, 20, null, null);
+        table2 = SystemTestUtil.createRandomHeapFile(3, 80, 20, null, null);
+        tid = new TransactionId();
+    }
+
+    private static ArrayList<ArrayList<Integer>> collect(DbIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            result.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        it.close();
+        return result;
+    }
+
+    /**
+     * Unsorted inputs are sorted first, and every supported comparison gives
+     * the same tuples as a nested-loop join, with duplicates on both sides.
+     */
+    @Test public void unsortedInputs() throws Exception {
+        for (Predicate.Op op : OPS) {
+            JoinPredicate p = new JoinPredicate(0, op, 1);
+            ArrayList<ArrayList<Integer>> expected = collect(new Join(p,
+                    new SeqScan(tid, table1.getId(), "a"), new SeqScan(tid, table2.getId(), "b")));
+            SortMergeJoin op2 = new SortMergeJoin(p,
+                    new SeqScan(tid, table1.getId(), "a"), new SeqScan(tid, table2.getId(), "b"));
+            SystemTestUtil.matchTuples(op2, expected);
+        }
+    }
+
+    /**
+     * Output is ordered on the left join field, and rewind starts over.
+     */
+    @Test public void orderAndRewind() throws Exception {
+        SortMergeJoin op = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN_OR_EQ, 1),
+                new SeqScan(tid, table1.getId(), "a"), new SeqScan(tid, table2.getId(), "b"));
+        ArrayList<ArrayList<Integer>> first = collect(op);
+        for (int i = 1; i < first.size(); i++) {
+            assertTrue(first.get(i - 1).get(0) <= first.get(i).get(0));
+        }
+        op.open();
+        for (int i = 0; i < first.size() / 2; i++) {
+            op.next();
+        }
+        op.rewind();
+        ArrayList<ArrayList<Integer>> second = new ArrayList<>();
+        while (op.hasNext()) {
+            second.add(SystemTestUtil.tupleToList(op.next()));
+        }
+        op.close();
+        assertEquals(first, second);
+    }
+
+    /**
+     * B+ tree scans on the join key are recognized as sorted, and joined
+     * without sorting them again.
+     */
+    @Test public void sortedInputs() throws Exception {
+        BTreeFile btree1 = BTreeUtility.createRandomBTreeFile(2, 100, 20, null, null, 1);
+        BTreeFile btree2 = BTreeUtility.createRandomBTreeFile(2, 80, 20, null, null, 0);
+        BTreeScan scan1 = new BTreeScan(tid, btree1.getId(), "a", null);
+        BTreeScan scan2 = new BTreeScan(tid, btree2.getId(), "b", null);
+        assertTrue(SortMergeJoin.isSorted(scan1, 1));
+        assertFalse(SortMergeJoin.isSorted(scan1, 0));
+        assertTrue(SortMergeJoin.isSorted(new Filter(
+                new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(3)), scan2), 0));
+
+        for (Predicate.Op op : OPS) {
+            JoinPredicate p = new JoinPredicate(1, op, 0);
+            ArrayList<ArrayList<Integer>> expected = collect(new Join(p,
+                    new SeqScan(tid, btree1.getId(), "a"), new SeqScan(tid, btree2.getId(), "b")));
+            SystemTestUtil.matchTuples(new SortMergeJoin(p, scan1, scan2), expected);
+        }
+        SortMergeJoin eq = new SortMergeJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0), scan1, scan2);
+        assertTrue(SortMergeJoin.isSorted(eq, 1));
+        assertTrue(SortMergeJoin.isSorted(eq, 2));
+    }
+
+    /**
+     * Sorted inputs make the sort-merge join cheaper, and the optimizer only
+     * picks and costs it when both inputs are sorted; unsorted ranges stay
+     * with the block nested-loop join.
+     */
+    @Test public void optimizer() throws Exception {
+        assertTrue(JoinOptimizer.estimateSortMergeJoinCost(1000, 1000, 10, 10, true, true)
+                < JoinOptimizer.estimateSortMergeJoinCost(1000, 1000, 10, 10, true, false));
+
+        SeqScan scan1 = new SeqScan(tid, table1.getId(), "t1");
+        SeqScan scan2 = new SeqScan(tid, table2.getId(), "t2");
+        String f1 = scan1.getTupleDesc().getFieldName(0);
+        String f2 = scan2.getTupleDesc().getFieldName(1);
+        LogicalJoinNode range = new LogicalJoinNode("t1", "t2", f1, f2, Predicate.Op.LESS_THAN);
+        assertTrue(JoinOptimizer.instantiateJoin(range, scan1, scan2) instanceof Join);
+        LogicalJoinNode eq = new LogicalJoinNode("t1", "t2", f1, f2, Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, scan1, scan2) instanceof HashEquiJoin);
+
+        File f = File.createTempFile("sorted", ".dat");
+        f.deleteOnExit();
+        BTreeFile btree = BTreeUtility.openBTreeFile(2, "c", f, 0);
+        SeqScan scan3 = new SeqScan(tid, btree.getId(), "t3");
+        SeqScan scan4 = new SeqScan(tid, btree.getId(), "t4");
+        String f3 = scan3.getTupleDesc().getFieldName(0);
+        String f4 = scan4.getTupleDesc().getFieldName(0);
+        LogicalJoinNode sortedRange = new LogicalJoinNode("t3", "t4", f3, f4, Predicate.Op.LESS_THAN);
+        assertTrue(JoinOptimizer.instantiateJoin(sortedRange, scan3, scan4) instanceof SortMergeJoin);
+        LogicalJoinNode sortedEq = new LogicalJoinNode("t4", "t1", f4, f1, Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(sortedEq, scan4,
+                new OrderBy(0, true, scan1)) instanceof SortMergeJoin);
+
+        LogicalPlan plan = new LogicalPlan();
+        plan.addScan(table1.getId(), "t1");
+        plan.addScan(table2.getId(), "t2");
+        plan.addScan(btree.getId(), "t3");
+        plan.addScan(btree.getId(), "t4");
+        JoinOptimizer jo = new JoinOptimizer(plan, new Vector<LogicalJoinNode>());
+        assertEquals(100 + 100 * 50 + 100.0 * 200, jo.estimateJoinCost(range, 100, 200, 100, 50), 1e-9);
+        assertEquals(JoinOptimizer.estimateSortMergeJoinCost(100, 200, 100, 50, true, true),
+                jo.estimateJoinCost(sortedRange, 100, 200, 100, 50), 1e-9);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
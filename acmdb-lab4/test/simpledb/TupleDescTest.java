@@ -145,6 +145,43 @@ public class TupleDescTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for TupleDesc.getOffset()
+     */
+    @Test public void getOffset() {
+        TupleDesc td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        assertEquals(0, td.getOffset(0));
+        assertEquals(Type.INT_TYPE.getLen(), td.getOffset(1));
+        assertEquals(Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen(), td.getOffset(2));
+        try {
+            td.getOffset(3);
+            Assert.fail("3 is not a valid field index");
+        } catch (NoSuchElementException e) {
+            // expected to get here
+        }
+    }
+
+    /**
+     * Merging the same pair of TupleDescs again gives back the same instance.
+     */
+    @Test public void mergeInterned() {
+        TupleDesc td1 = Utility.getTupleDesc(1, "td1");
+        TupleDesc td2 = Utility.getTupleDesc(2, "td2");
+        TupleDesc td3 = TupleDesc.merge(td1, td2);
+        assertSame(td3, TupleDesc.merge(td1, td2));
+        TupleDesc other = TupleDesc.merge(td1, Utility.getTupleDesc(2, "other"));
+        assertEquals("other1", other.getFieldName(2));
+        assertEquals(2, other.fieldNameToIndex("other1"));
+        assertEquals("td21", TupleDesc.merge(td1, td2).getFieldName(2));
+    }
+
+    @Test public void testHashCode() {
+        TupleDesc a = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"a", "b"});
+        TupleDesc b = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
     @Test public void testEquals() {
         TupleDesc singleInt = new TupleDesc(new Type[]{Type.INT_TYPE});
         TupleDesc singleInt2 = new TupleDesc(new Type[]{Type.INT_TYPE});
@@ -1,6 +1,8 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
@@ -29,6 +31,48 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * Unboxed ints and fields are two views of the same values.
+     */
+    @Test public void intFields() {
+        Tuple tup = new Tuple(Utility.getTupleDesc(3));
+        assertNull(tup.getField(0));
+        tup.setInt(0, 5);
+        tup.setField(1, new IntField(-7));
+        assertEquals(new IntField(5), tup.getField(0));
+        assertEquals(-7, tup.getInt(1));
+        assertSame(tup.getField(0), tup.getField(0));
+        tup.setInt(0, 6);
+        assertEquals(new IntField(6), tup.getField(0));
+        assertNull(tup.getField(2));
+
+        // a field that does not fit the schema is kept as it is
+        tup.setField(2, new StringField("x", 4));
+        assertEquals(new StringField("x", 4), tup.getField(2));
+        assertEquals(6, tup.getInt(0));
+        assertEquals("6\t-7\tx", tup.toString());
+    }
+
+    /**
+     * Unit test for Tuple.merge() and Tuple.copyField()
+     */
+    @Test public void mergeAndCopy() {
+        Tuple a = Utility.getHeapTuple(new int[] {1, 2});
+        Tuple b = Utility.getHeapTuple(new int[] {3});
+        TupleDesc td = TupleDesc.merge(a.getTupleDesc(), b.getTupleDesc());
+        Tuple merged = Tuple.merge(td, a, b);
+        assertSame(td, merged.getTupleDesc());
+        assertEquals("1\t2\t3", merged.toString());
+
+        TupleDesc mixed = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE});
+        Tuple s = new Tuple(mixed);
+        s.copyField(0, merged, 2);
+        s.setField(1, new StringField("y", 4));
+        merged = Tuple.merge(b, s);
+        assertEquals(3, merged.getInt(1));
+        assertEquals(new StringField("y", 4), merged.getField(2));
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
@@ -0,0 +1,194 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class VarcharTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.VARCHAR_TYPE}, new String[] {"id", "name"});
+
+    private static String name(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < i % 20; j++) {
+            sb.append((char) ('a' + j));
+        }
+        return sb.toString();
+    }
+
+    private static Tuple tuple(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(name(i), Type.STRING_LEN, Type.VARCHAR_TYPE));
+        return t;
+    }
+
+    private static HeapFile createHeapFile(int rows) throws Exception {
+        File text = File.createTempFile("varchar", ".txt");
+        text.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(text));
+        for (int i = 0; i < rows; i++) {
+            bw.write(i + "," + name(i) + "\n");
+        }
+        bw.close();
+        File f = File.createTempFile("varchar", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(text, f, BufferPool.getPageSize(), 2,
+                new Type[] {Type.INT_TYPE, Type.VARCHAR_TYPE}, ',');
+        HeapFile hf = new HeapFile(f, TD);
+        Database.getCatalog().addTable(hf);
+        return hf;
+    }
+
+    /** Read all tuples of a file as a map from id to name. */
+    private static Map<Integer, String> read(DbFile f) throws Exception {
+        Map<Integer, String> result = new HashMap<>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(Type.VARCHAR_TYPE, t.getField(1).getType());
+            String old = result.put(((IntField) t.getField(0)).getValue(),
+                    ((StringField) t.getField(1)).getValue());
+            assertEquals(null, old);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return result;
+    }
+
+    /**
+     * A VARCHAR field takes only as many bytes as its value, and is padded
+     * to the maximum length when written in fixed form.
+     */
+    @Test public void serialize() throws Exception {
+        StringField f = new StringField("hello", Type.STRING_LEN, Type.VARCHAR_TYPE);
+        assertEquals(7, f.getSerializedLength());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        f.serialize(new DataOutputStream(baos));
+        assertEquals(7, baos.size());
+        assertEquals(f, Type.VARCHAR_TYPE.parse(new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+
+        baos = new ByteArrayOutputStream();
+        f.serializeFixed(new DataOutputStream(baos));
+        assertEquals(Type.VARCHAR_TYPE.getLen(), baos.size());
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(f, Type.VARCHAR_TYPE.parseFixed(dis));
+        assertEquals(0, dis.available());
+    }
+
+    /**
+     * Short values pack many more tuples into a slotted page than fit into
+     * the fixed-size slots of a STRING table.
+     */
+    @Test public void encodeAndScan() throws Exception {
+        HeapFile hf = createHeapFile(3000);
+        Map<Integer, String> tuples = read(hf);
+        assertEquals(3000, tuples.size());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(name(i), tuples.get(i));
+        }
+        TupleDesc fixed = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE});
+        int fixedPages = (3000 + HeapPage.getNumTuples(fixed) - 1) / HeapPage.getNumTuples(fixed);
+        assertTrue(hf.numPages() * 5 < fixedPages);
+    }
+
+    /**
+     * Tuples inserted into and deleted from a slotted page survive writing
+     * the page out and reading it back.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        HeapFile hf = createHeapFile(0);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.canInsert(tuple(n))) {
+            page.insertTuple(tuple(n++));
+        }
+        assertEquals(0, page.getNumEmptySlots());
+        for (int i = 0; i < n; i += 2) {
+            page.deleteTuple(page.getTuple(i));
+        }
+        assertTrue(page.getNumEmptySlots() > 0);
+
+        byte[] data = page.getPageData();
+        HeapPage reread = new HeapPage(pid, data);
+        assertArrayEquals(data, reread.getPageData());
+        int count = 0;
+        for (java.util.Iterator<Tuple> it = reread.iterator(); it.hasNext(); count++) {
+            Tuple t = it.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals(1, id % 2);
+            assertEquals(name(id), ((StringField) t.getField(1)).getValue());
+        }
+        assertEquals(n / 2, count);
+
+        // the freed bytes are reused
+        assertTrue(reread.canInsert(tuple(n)));
+        reread.insertTuple(tuple(n));
+        assertFalse(reread.isSlotUsed(2));
+        assertTrue(reread.isSlotUsed(0));
+    }
+
+    /**
+     * Inserts through the buffer pool fill up pages by bytes, not slots,
+     * and are read back after a restart.
+     */
+    @Test public void heapFileInsert() throws Exception {
+        HeapFile hf = createHeapFile(10);
+        TransactionId tid = new TransactionId();
+        for (int i = 10; i < 2000; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Map<Integer, String> tuples = read(hf);
+        assertEquals(2000, tuples.size());
+        assertEquals(name(1999), tuples.get(1999));
+    }
+
+    /**
+     * B+ tree pages keep VARCHAR fields in fixed-size slots.
+     */
+    @Test public void btreeFile() throws Exception {
+        File f = File.createTempFile("varchar", ".dat");
+        f.deleteOnExit();
+        f.delete();
+        BTreeFile bf = new BTreeFile(f, 0, TD);
+        Database.getCatalog().addTable(bf);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 500; i++) {
+            Database.getBufferPool().insertTuple(tid, bf.getId(), tuple(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Map<Integer, String> tuples = read(bf);
+        assertEquals(500, tuples.size());
+        assertEquals(name(499), tuples.get(499));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(VarcharTest.class);
+    }
+}
@@ -17,6 +17,8 @@ public class SystemTestUtil {
             new TupleDesc(new Type[]{Type.INT_TYPE});
 
     private static final int MAX_RAND_VALUE = 1 << 16;
+    /** Number of tuples of two int columns on a page of the default size. */
+    private static final int TWO_INT_TUPLES_PER_PAGE = 504;
 
     /** @param columnSpecification Mapping between column index and value. */
     public static HeapFile createRandomHeapFile(
@@ -52,6 +54,22 @@ public class SystemTestUtil {
         return Utility.openHeapFile(columns, colPrefix, temp);
     }
 
+    /**
+     * Create a heap file of two random int columns that fills the given
+     * number of pages of the default size.
+     */
+    public static HeapFile createRandomHeapFile(int pages)
+            throws IOException, DbException, TransactionAbortedException {
+        return createRandomHeapFile(2, TWO_INT_TUPLES_PER_PAGE * pages, null, null);
+    }
+
+    /**
+     * @return the id of the given page of a heap file
+     */
+    public static HeapPageId pid(HeapFile f, int pgNo) {
+        return new HeapPageId(f.getId(), pgNo);
+    }
+
     public static File createRandomHeapFileUnopened(int columns, int rows,
             int maxValue, Map<Integer, Integer> columnSpecification,
             ArrayList<ArrayList<Integer>> tuples) throws IOException {